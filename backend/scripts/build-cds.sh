@@ -0,0 +1,30 @@
+#!/usr/bin/env bash
+# Builds a class-data-sharing (CDS) archive for the backend.
+#
+# The training run starts the app once with the prod profile and dumps the loaded classes to
+# target/cds/app.jsa when it exits, so the database must be reachable (docker-compose up -d).
+# Extra arguments are passed to the app, e.g. --spring.datasource.url=...
+#
+# Start the app with the archive:
+#   java -XX:SharedArchiveFile=target/cds/app.jsa -cp "target/cds/app.jar:target/cds/lib/*" \
+#       com.smartcoach.backend.SmartCoachApplication --spring.profiles.active=prod
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+MVN=${MVN:-mvn}
+OUT=target/cds
+
+$MVN -B -q -DskipTests package
+rm -rf "$OUT"
+mkdir -p "$OUT/lib"
+
+# CDS only archives classes loaded from plain jars on the class path, not from the nested
+# jars of the executable jar, so use the thin jar plus its dependencies
+cp target/backend-0.0.1-SNAPSHOT.jar.original "$OUT/app.jar"
+$MVN -B -q dependency:copy-dependencies -DincludeScope=runtime -DoutputDirectory="$OUT/lib"
+
+java -XX:ArchiveClassesAtExit="$OUT/app.jsa" -cp "$OUT/app.jar:$OUT/lib/*" \
+    com.smartcoach.backend.SmartCoachApplication \
+    --spring.profiles.active=prod --smartcoach.startup.exit-on-ready=true "$@"
+
+echo "CDS archive written to $OUT/app.jsa"
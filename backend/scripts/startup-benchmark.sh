@@ -0,0 +1,63 @@
+#!/usr/bin/env bash
+# Reports boot time and first-request latency for the default configuration, the prod profile,
+# and the prod profile with the CDS archive. Run scripts/build-cds.sh first; the database must
+# be reachable. Extra arguments are passed to the app.
+#
+#   scripts/startup-benchmark.sh [--spring.datasource.url=...]
+#
+# RUNS (default 5) sets the runs per mode, PORT (default 18080) the port the app listens on.
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+RUNS=${RUNS:-5}
+PORT=${PORT:-18080}
+URL="http://localhost:$PORT/api/dashboard/1/stats"
+CP="target/cds/app.jar:target/cds/lib/*"
+LOG=target/startup-benchmark.log
+
+if [ ! -f target/cds/app.jar ]; then
+    echo "target/cds/app.jar not found, run scripts/build-cds.sh first" >&2
+    exit 1
+fi
+
+# one run: prints "<ms until first response> <ms ready after JVM start> <first request ms>"
+run_once() {
+    local jvm_opts=$1; shift
+    local start end pid
+    start=$(date +%s%3N)
+    # shellcheck disable=SC2086
+    java $jvm_opts -cp "$CP" com.smartcoach.backend.SmartCoachApplication --server.port="$PORT" "$@" > "$LOG" 2>&1 &
+    pid=$!
+    until curl -s -o /dev/null "$URL"; do
+        if ! kill -0 "$pid" 2>/dev/null; then
+            echo "app exited during startup, see $LOG" >&2
+            exit 1
+        fi
+        sleep 0.05
+    done
+    end=$(date +%s%3N)
+    sleep 0.5
+    kill "$pid"
+    wait "$pid" 2>/dev/null || true
+    local ready first
+    ready=$(sed -n 's/.*Startup: ready \([0-9]*\) ms.*/\1/p' "$LOG" | head -1)
+    first=$(sed -n 's/.*Startup: first request .* took \([0-9]*\) ms.*/\1/p' "$LOG" | head -1)
+    echo "$((end - start)) ${ready:-0} ${first:-0}"
+}
+
+bench() {
+    local label=$1 jvm_opts=$2; shift 2
+    local total=0 ready=0 first=0 r
+    for _ in $(seq "$RUNS"); do
+        read -r -a r <<< "$(run_once "$jvm_opts" "$@")"
+        total=$((total + r[0])); ready=$((ready + r[1])); first=$((first + r[2]))
+    done
+    printf "%-16s %14d %14d %18d\n" "$label" $((total / RUNS)) $((ready / RUNS)) $((first / RUNS))
+}
+
+printf "%-16s %14s %14s %18s\n" "mode" "to 1st resp ms" "ready ms" "1st request ms"
+bench "default" "" "$@"
+bench "prod" "" --spring.profiles.active=prod "$@"
+if [ -f target/cds/app.jsa ]; then
+    bench "prod + CDS" "-XX:SharedArchiveFile=target/cds/app.jsa" --spring.profiles.active=prod "$@"
+fi
@@ -0,0 +1,60 @@
+package com.smartcoach.backend.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+// Only active when a replica is configured and sharding is off; otherwise Boot's single datasource
+// (or ShardingConfig's routing datasource) is used.
+@Configuration
+@ConditionalOnExpression("'${smartcoach.datasource.replica.url:}' != '' and !${smartcoach.sharding.enabled:false}")
+public class DataSourceRoutingConfig {
+
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource")
+    public DataSourceProperties primaryDataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    @Bean
+    @ConfigurationProperties("smartcoach.datasource.replica")
+    public DataSourceProperties replicaDataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryPool() {
+        return primaryDataSourceProperties().initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    @ConfigurationProperties("smartcoach.datasource.replica.hikari")
+    public HikariDataSource replicaPool() {
+        return replicaDataSourceProperties().initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource() {
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource();
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(ReplicaRoutingDataSource.PRIMARY, primaryPool());
+        targets.put(ReplicaRoutingDataSource.REPLICA, replicaPool());
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(primaryPool());
+        routing.afterPropertiesSet();
+        // defer fetching a connection until the transaction's read-only flag is known
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+}
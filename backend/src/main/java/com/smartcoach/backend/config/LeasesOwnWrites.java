@@ -0,0 +1,14 @@
+package com.smartcoach.backend.config;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Marks write handlers of a @ShardedByUser controller that take the user's write lease themselves,
+// only on the paths that write to the shard. The interceptor then only refuses users it already
+// knows to be moving.
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface LeasesOwnWrites {
+}
@@ -0,0 +1,20 @@
+package com.smartcoach.backend.config;
+
+import com.smartcoach.backend.model.ArchivedMonth;
+import com.smartcoach.backend.model.Goal;
+import com.smartcoach.backend.model.Meal;
+import com.smartcoach.backend.model.User;
+import com.smartcoach.backend.model.Workout;
+import com.smartcoach.backend.service.ArchiveService;
+import com.smartcoach.backend.service.ShardRebalancer;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.context.annotation.Configuration;
+
+// Controllers return these inside untyped Map bodies, so AOT can't infer that Jackson needs them.
+// Note that conditions such as the replica routing switch are evaluated when the AOT image is built.
+@Configuration
+@RegisterReflectionForBinding({Goal.class, Meal.class, Workout.class, User.class, ArchivedMonth.class,
+        ArchiveService.ArchiveReport.class, ArchiveService.TableStats.class, ShardRebalancer.MoveReport.class,
+        ShardRebalancer.RebalanceReport.class})
+public class NativeHintsConfig {
+}
@@ -0,0 +1,58 @@
+package com.smartcoach.backend.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+import java.util.Set;
+
+// eager so the first request does not pay for building the interceptor chain
+@Component
+@Lazy(false)
+public class ReadAfterWriteInterceptor implements HandlerInterceptor {
+    private static final Set<String> WRITE_METHODS = Set.of("POST", "PUT", "PATCH", "DELETE");
+
+    private final ReadAfterWriteTracker tracker;
+
+    public ReadAfterWriteInterceptor(ReadAfterWriteTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        Long userId = userIdOf(request);
+        if (isWrite(request)) {
+            // writes stay on the primary and pin the user's following reads there too
+            if (userId != null) tracker.recordWrite(userId, response);
+            ReplicaRoutingDataSource.pinToPrimary();
+        } else if (userId != null && tracker.hasRecentWrite(userId, request)) {
+            ReplicaRoutingDataSource.pinToPrimary();
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        ReplicaRoutingDataSource.clearPin();
+    }
+
+    // HEAD and CORS preflight OPTIONS requests must not pin the user to the primary
+    static boolean isWrite(HttpServletRequest request) {
+        return WRITE_METHODS.contains(request.getMethod());
+    }
+
+    @SuppressWarnings("unchecked")
+    static Long userIdOf(HttpServletRequest request) {
+        Map<String, String> vars = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (vars == null || !vars.containsKey("userId")) return null;
+        try {
+            return Long.parseLong(vars.get("userId"));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.smartcoach.backend.config;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// The read-after-write window travels with the client as a short-lived cookie per user, so it holds
+// whichever instance serves the next read and nothing is kept on the server. The window starts when
+// the write is accepted: the cookie has to be set before the response is committed.
+@Component
+public class ReadAfterWriteTracker {
+    private static final String COOKIE_PREFIX = "primary-until-";
+
+    private final long windowMillis;
+
+    public ReadAfterWriteTracker(@Value("${smartcoach.datasource.read-after-write-window-ms:5000}") long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    public void recordWrite(Long userId, HttpServletResponse response) {
+        Cookie cookie = new Cookie(COOKIE_PREFIX + userId, Long.toString(System.currentTimeMillis() + windowMillis));
+        cookie.setPath("/api");
+        cookie.setMaxAge((int) Math.max(1, (windowMillis + 999) / 1000));
+        cookie.setHttpOnly(true);
+        response.addCookie(cookie);
+    }
+
+    public boolean hasRecentWrite(Long userId, HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) return false;
+        long now = System.currentTimeMillis();
+        for (Cookie cookie : cookies) {
+            if (!cookie.getName().equals(COOKIE_PREFIX + userId)) continue;
+            try {
+                long until = Long.parseLong(cookie.getValue());
+                // the client controls the value: one further out than a window is ignored
+                return until > now && until <= now + windowMillis;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,28 @@
+package com.smartcoach.backend.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+    public static final String PRIMARY = "primary";
+    public static final String REPLICA = "replica";
+
+    private static final ThreadLocal<Boolean> pinnedToPrimary = new ThreadLocal<>();
+
+    public static void pinToPrimary() {
+        pinnedToPrimary.set(Boolean.TRUE);
+    }
+
+    public static void clearPin() {
+        pinnedToPrimary.remove();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        // only read-only transactions of requests without a recent write go to the replica
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && pinnedToPrimary.get() == null) {
+            return REPLICA;
+        }
+        return PRIMARY;
+    }
+}
@@ -0,0 +1,24 @@
+package com.smartcoach.backend.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+    public static final int CATALOG = 0;
+
+    private static final ThreadLocal<Integer> currentShard = new ThreadLocal<>();
+
+    public static Integer current() {
+        return currentShard.get();
+    }
+
+    public static void use(Integer shard) {
+        if (shard == null) currentShard.remove();
+        else currentShard.set(shard);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Integer shard = currentShard.get();
+        return shard == null ? CATALOG : shard;
+    }
+}
@@ -0,0 +1,67 @@
+package com.smartcoach.backend.config;
+
+import com.smartcoach.backend.service.ShardRouter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.io.IOException;
+import java.util.List;
+
+@Component
+@Lazy(false)
+public class ShardRoutingInterceptor implements HandlerInterceptor {
+    // the write lease held by a request until it completes
+    private static final String LEASE = ShardRoutingInterceptor.class.getName() + ".lease";
+
+    private final ShardRouter router;
+
+    public ShardRoutingInterceptor(ShardRouter router) {
+        this.router = router;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        if (!router.isSharded() || !(handler instanceof HandlerMethod method)
+                || !method.getBeanType().isAnnotationPresent(ShardedByUser.class)) {
+            return true;
+        }
+        Long userId = ReadAfterWriteInterceptor.userIdOf(request);
+        if (userId == null) return true;
+        if (ReadAfterWriteInterceptor.isWrite(request)) {
+            if (method.hasMethodAnnotation(LeasesOwnWrites.class)) {
+                if (router.isMoving(userId)) return refuse(response);
+            } else {
+                ShardRouter.WriteLease lease = router.beginWrite(List.of(userId));
+                if (!lease.admits(userId)) {
+                    lease.close();
+                    return refuse(response);
+                }
+                request.setAttribute(LEASE, lease);
+            }
+        }
+        ShardRoutingDataSource.use(router.shardFor(userId));
+        return true;
+    }
+
+    // the user's rows are being copied to another shard; a write now could be lost in the cut-over
+    private boolean refuse(HttpServletResponse response) throws IOException {
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader("Retry-After", "5");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"error\":\"User data is being moved, retry shortly\",\"status\":503}");
+        return false;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        ShardRoutingDataSource.use(null);
+        if (request.getAttribute(LEASE) instanceof ShardRouter.WriteLease lease) {
+            lease.close();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.smartcoach.backend.config;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Marks controllers whose /{userId}/... requests run against that user's shard.
+// Everything else (auth, profiles, admin) stays on the catalog shard.
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ShardedByUser {
+}
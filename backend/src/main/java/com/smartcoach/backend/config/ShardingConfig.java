@@ -0,0 +1,108 @@
+package com.smartcoach.backend.config;
+
+import com.smartcoach.backend.service.ShardRouter;
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Configuration
+@EnableConfigurationProperties(ShardingProperties.class)
+public class ShardingConfig {
+    // tables with per-shard identity ranges, and their id column
+    private static final Map<String, String> ID_COLUMNS = Map.of(
+            "workout", "workout_id", "meal", "meal_id", "goal", "goal_id", "archived_month", "archived_month_id");
+
+    // Each shard gets its own pool and schema; users and the user_shard directory live on shard 0.
+    @Configuration
+    @ConditionalOnProperty(prefix = "smartcoach.sharding", name = "enabled", havingValue = "true")
+    static class Sharded {
+
+        // eager: shard migrations and the directory must be in place before the first request
+        @Bean
+        @Lazy(false)
+        public Map<Integer, DataSource> shardPools(ShardingProperties properties) {
+            List<DataSourceProperties> configured = properties.getShards();
+            if (configured.isEmpty()) {
+                throw new IllegalStateException("smartcoach.sharding.enabled is set but no smartcoach.sharding.shards are configured");
+            }
+            Map<Integer, DataSource> pools = new TreeMap<>();
+            for (int shard = 0; shard < configured.size(); shard++) {
+                HikariDataSource pool = configured.get(shard).initializeDataSourceBuilder().type(HikariDataSource.class).build();
+                pool.setPoolName("shard-" + shard);
+                Flyway.configure().dataSource(pool).baselineOnMigrate(true).baselineVersion("0").load().migrate();
+                if (shard > 0) reserveIdRange(pool, shard, shard * properties.getIdRangeSize());
+                pools.put(shard, pool);
+            }
+            return pools;
+        }
+
+        @Bean
+        @Primary
+        public DataSource dataSource(Map<Integer, DataSource> shardPools) {
+            ShardRoutingDataSource routing = new ShardRoutingDataSource();
+            routing.setTargetDataSources(new HashMap<>(shardPools));
+            routing.setDefaultTargetDataSource(shardPools.get(ShardRoutingDataSource.CATALOG));
+            routing.afterPropertiesSet();
+            // the shard is chosen when the first statement runs, after the interceptor has set it
+            return new LazyConnectionDataSourceProxy(routing);
+        }
+
+        @Bean
+        @Lazy(false)
+        public ShardRouter shardRouter(Map<Integer, DataSource> shardPools, ShardingProperties properties) {
+            // a write holds one of these for its whole request while it uses a shard connection
+            HikariDataSource locks = properties.getShards().get(ShardRoutingDataSource.CATALOG)
+                    .initializeDataSourceBuilder().type(HikariDataSource.class).build();
+            locks.setPoolName("shard-0-locks");
+            locks.setMaximumPoolSize(properties.getLockPoolSize());
+            return new ShardRouter(shardPools, locks, properties.getVirtualNodes(), properties.getDirectoryTtlMs());
+        }
+
+        // Ids stay unique across shards, so a moved user's rows keep their ids. The identities are
+        // restarted only the first time: later, max(id) can be below the ids already handed out (all
+        // of a user's rows moved away, say), and restarting again would hand them out twice.
+        private static void reserveIdRange(DataSource pool, int shard, long base) {
+            JdbcTemplate jdbc = new JdbcTemplate(pool);
+            List<Long> reserved = jdbc.queryForList("select range_start from shard_identity where shard_id = ?", Long.class, shard);
+            if (!reserved.isEmpty()) {
+                if (reserved.get(0) != base) {
+                    throw new IllegalStateException("Shard " + shard + " reserved ids from " + reserved.get(0)
+                            + " but smartcoach.sharding.id-range-size now puts its range at " + base);
+                }
+                return;
+            }
+            ID_COLUMNS.forEach((table, column) -> {
+                Long max = jdbc.queryForObject("select max(" + column + ") from " + table, Long.class);
+                if (max == null || max < base) {
+                    jdbc.execute("alter table " + table + " alter column " + column + " restart with " + base);
+                }
+            });
+            jdbc.update("insert into shard_identity (shard_id, range_start) values (?, ?)", shard, base);
+        }
+    }
+
+    @Configuration
+    @ConditionalOnProperty(prefix = "smartcoach.sharding", name = "enabled", havingValue = "false", matchIfMissing = true)
+    static class Single {
+
+        @Bean
+        @Lazy(false)
+        public ShardRouter shardRouter() {
+            return ShardRouter.single();
+        }
+    }
+}
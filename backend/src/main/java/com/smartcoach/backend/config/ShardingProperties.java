@@ -0,0 +1,39 @@
+package com.smartcoach.backend.config;
+
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@ConfigurationProperties("smartcoach.sharding")
+public class ShardingProperties {
+    private boolean enabled;
+    private int virtualNodes = 64;
+    // ids generated on shard n start at n * idRangeSize, so rows keep their ids when moved
+    private long idRangeSize = 1L << 40;
+    // how long a user's directory entry may be served from memory for reads
+    private long directoryTtlMs = 1000;
+    // connections for the directory row locks held by writes in progress
+    private int lockPoolSize = 20;
+    // index in this list is the shard id; shard 0 is also the catalog
+    private List<DataSourceProperties> shards = new ArrayList<>();
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    public int getVirtualNodes() { return virtualNodes; }
+    public void setVirtualNodes(int virtualNodes) { this.virtualNodes = virtualNodes; }
+
+    public long getIdRangeSize() { return idRangeSize; }
+    public void setIdRangeSize(long idRangeSize) { this.idRangeSize = idRangeSize; }
+
+    public long getDirectoryTtlMs() { return directoryTtlMs; }
+    public void setDirectoryTtlMs(long directoryTtlMs) { this.directoryTtlMs = directoryTtlMs; }
+
+    public int getLockPoolSize() { return lockPoolSize; }
+    public void setLockPoolSize(int lockPoolSize) { this.lockPoolSize = lockPoolSize; }
+
+    public List<DataSourceProperties> getShards() { return shards; }
+    public void setShards(List<DataSourceProperties> shards) { this.shards = shards; }
+}
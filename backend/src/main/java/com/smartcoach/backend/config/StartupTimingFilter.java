@@ -0,0 +1,58 @@
+package com.smartcoach.backend.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Logs boot time and first-request latency, which scripts/startup-benchmark.sh collects.
+// With smartcoach.startup.exit-on-ready=true the JVM exits once ready (used for the CDS training run).
+@Component
+@Lazy(false)
+public class StartupTimingFilter extends OncePerRequestFilter implements ApplicationListener<ApplicationReadyEvent> {
+    private static final Logger log = LoggerFactory.getLogger(StartupTimingFilter.class);
+
+    private final AtomicBoolean firstRequest = new AtomicBoolean(true);
+    private final boolean exitOnReady;
+
+    public StartupTimingFilter(@Value("${smartcoach.startup.exit-on-ready:false}") boolean exitOnReady) {
+        this.exitOnReady = exitOnReady;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        log.info("Startup: ready {} ms after JVM start", ManagementFactory.getRuntimeMXBean().getUptime());
+        if (exitOnReady) {
+            System.exit(SpringApplication.exit(event.getApplicationContext()));
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!firstRequest.compareAndSet(true, false)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            log.info("Startup: first request {} {} took {} ms, completed {} ms after JVM start", request.getMethod(),
+                    request.getRequestURI(), (System.nanoTime() - start) / 1_000_000, ManagementFactory.getRuntimeMXBean().getUptime());
+        }
+    }
+}
@@ -1,12 +1,36 @@
 package com.smartcoach.backend.config;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
+    private final ReadAfterWriteInterceptor readAfterWriteInterceptor;
+    private final ShardRoutingInterceptor shardRoutingInterceptor;
+    private final ObjectProvider<OpenEntityManagerInViewInterceptor> openEntityManagerInView;
+
+    public WebConfig(ReadAfterWriteInterceptor readAfterWriteInterceptor, ShardRoutingInterceptor shardRoutingInterceptor,
+                     ObjectProvider<OpenEntityManagerInViewInterceptor> openEntityManagerInView) {
+        this.readAfterWriteInterceptor = readAfterWriteInterceptor;
+        this.shardRoutingInterceptor = shardRoutingInterceptor;
+        this.openEntityManagerInView = openEntityManagerInView;
+    }
+
+    // Replaces Boot's open-in-view registration (which backs off when this bean exists) so that it
+    // can leave out /api/admin/**: an open EntityManager keeps the first connection it gets, and
+    // admin work switches shards within one request.
+    @Bean
+    @ConditionalOnProperty(prefix = "spring.jpa", name = "open-in-view", havingValue = "true", matchIfMissing = true)
+    public static OpenEntityManagerInViewInterceptor openEntityManagerInViewInterceptor() {
+        return new OpenEntityManagerInViewInterceptor();
+    }
 
     @Override
     public void addCorsMappings(CorsRegistry registry) {
@@ -18,6 +42,14 @@ public class WebConfig implements WebMvcConfigurer {
                 .maxAge(3600);
     }
 
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(readAfterWriteInterceptor).addPathPatterns("/api/**");
+        registry.addInterceptor(shardRoutingInterceptor).addPathPatterns("/api/**");
+        openEntityManagerInView.ifAvailable(osiv ->
+                registry.addWebRequestInterceptor(osiv).addPathPatterns("/**").excludePathPatterns("/api/admin/**"));
+    }
+
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
         // Serve uploaded files from the uploads folder at /uploads/**
@@ -0,0 +1,134 @@
+package com.smartcoach.backend.controller;
+
+import com.smartcoach.backend.repository.UserRepository;
+import com.smartcoach.backend.service.ShardRebalancer;
+import com.smartcoach.backend.service.ShardRouter;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+    private final ShardRouter shardRouter;
+    private final ShardRebalancer shardRebalancer;
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    public AdminController(ShardRouter shardRouter, ShardRebalancer shardRebalancer,
+                           UserRepository userRepository, JdbcTemplate jdbcTemplate) {
+        this.shardRouter = shardRouter;
+        this.shardRebalancer = shardRebalancer;
+        this.userRepository = userRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // totals across all shards, queried in parallel
+    @GetMapping("/stats")
+    public ResponseEntity<?> getStats() {
+        List<Map<String,Object>> shards = shardRouter.fanOut(shard -> {
+            Map<String,Object> s = new LinkedHashMap<>();
+            s.put("shard", shard);
+            s.put("activeUsers", count("select count(distinct user_id) from (select user_id from workout union select user_id from meal union select user_id from goal) u"));
+            s.put("workouts", count("select count(*) from workout"));
+            s.put("meals", count("select count(*) from meal"));
+            s.put("goals", count("select count(*) from goal"));
+            s.put("caloriesBurned", count("select coalesce(sum(calories), 0) from workout"));
+            s.put("caloriesConsumed", count("select coalesce(sum(calories), 0) from meal"));
+            return s;
+        });
+
+        Map<String,Object> totals = new LinkedHashMap<>();
+        totals.put("users", userRepository.count());
+        for (String key : List.of("activeUsers", "workouts", "meals", "goals", "caloriesBurned", "caloriesConsumed")) {
+            totals.put(key, shards.stream().mapToLong(s -> (Long) s.get(key)).sum());
+        }
+        Map<String,Object> inner = new HashMap<>();
+        inner.put("totals", totals);
+        inner.put("shards", shards);
+        Map<String,Object> resp = new HashMap<>();
+        resp.put("data", inner);
+        resp.put("status", 200);
+        return ResponseEntity.ok(resp);
+    }
+
+    @GetMapping("/shards/users/{userId}")
+    public ResponseEntity<?> getUserShard(@PathVariable Long userId) {
+        Map<String,Object> inner = new HashMap<>();
+        inner.put("userId", userId);
+        inner.put("shard", shardRouter.shardFor(userId));
+        inner.put("hashedShard", shardRouter.hashedShardFor(userId));
+        inner.put("moving", shardRouter.isMoving(userId));
+        Map<String,Object> resp = new HashMap<>();
+        resp.put("data", inner);
+        resp.put("status", 200);
+        return ResponseEntity.ok(resp);
+    }
+
+    @PostMapping("/shards/users/{userId}/move")
+    public ResponseEntity<?> moveUser(@PathVariable Long userId, @RequestParam int target) {
+        try {
+            Map<String,Object> resp = new HashMap<>();
+            resp.put("data", shardRebalancer.moveUser(userId, target));
+            resp.put("status", 200);
+            return ResponseEntity.ok(resp);
+        } catch (IllegalArgumentException e) {
+            Map<String,Object> r = new HashMap<>();
+            r.put("error", e.getMessage());
+            r.put("status", 400);
+            return ResponseEntity.badRequest().body(r);
+        } catch (IllegalStateException e) {
+            // the move was rolled back and the user is still served from the source shard
+            Map<String,Object> r = new HashMap<>();
+            r.put("error", e.getMessage());
+            r.put("status", 409);
+            return ResponseEntity.status(409).body(r);
+        }
+    }
+
+    // run with the current shard list before adding a shard, see README "Adding a shard"
+    @PostMapping("/shards/pin")
+    public ResponseEntity<?> pinUsers() {
+        try {
+            List<Long> userIds = jdbcTemplate.queryForList("select user_id from users", Long.class);
+            Map<String,Object> inner = new HashMap<>();
+            inner.put("users", userIds.size());
+            inner.put("pinned", shardRebalancer.pinAll(userIds));
+            Map<String,Object> resp = new HashMap<>();
+            resp.put("data", inner);
+            resp.put("status", 200);
+            return ResponseEntity.ok(resp);
+        } catch (IllegalStateException e) {
+            Map<String,Object> r = new HashMap<>();
+            r.put("error", e.getMessage());
+            r.put("status", 409);
+            return ResponseEntity.status(409).body(r);
+        }
+    }
+
+    // moves pinned users onto the current ring, limit users per call
+    @PostMapping("/shards/rebalance")
+    public ResponseEntity<?> rebalance(@RequestParam(defaultValue = "100") int limit) {
+        try {
+            Map<String,Object> resp = new HashMap<>();
+            resp.put("data", shardRebalancer.rebalance(limit));
+            resp.put("status", 200);
+            return ResponseEntity.ok(resp);
+        } catch (IllegalStateException e) {
+            Map<String,Object> r = new HashMap<>();
+            r.put("error", e.getMessage());
+            r.put("status", 409);
+            return ResponseEntity.status(409).body(r);
+        }
+    }
+
+    private long count(String sql) {
+        Long n = jdbcTemplate.queryForObject(sql, Long.class);
+        return n == null ? 0 : n;
+    }
+}
@@ -0,0 +1,75 @@
+package com.smartcoach.backend.controller;
+
+import com.smartcoach.backend.config.ShardedByUser;
+import com.smartcoach.backend.model.ArchivedMonth;
+import com.smartcoach.backend.repository.ArchivedMonthRepository;
+import com.smartcoach.backend.service.ArchiveService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@ShardedByUser
+@RequestMapping("/api/admin/archive")
+public class ArchiveController {
+    private final ArchiveService archiveService;
+    private final ArchivedMonthRepository archivedMonthRepository;
+
+    public ArchiveController(ArchiveService archiveService, ArchivedMonthRepository archivedMonthRepository) {
+        this.archiveService = archiveService;
+        this.archivedMonthRepository = archivedMonthRepository;
+    }
+
+    @PostMapping("/run")
+    public ResponseEntity<?> runArchive() throws IOException {
+        Map<String,Object> resp = new HashMap<>();
+        resp.put("data", archiveService.archive());
+        resp.put("status", 200);
+        return ResponseEntity.ok(resp);
+    }
+
+    @GetMapping("/{userId}")
+    public ResponseEntity<?> getArchivedMonths(@PathVariable Long userId) {
+        Map<String,Object> resp = new HashMap<>();
+        resp.put("data", archivedMonthRepository.findByUserId(userId));
+        resp.put("status", 200);
+        return ResponseEntity.ok(resp);
+    }
+
+    @PostMapping("/{userId}/{kind}/{month}/restore")
+    public ResponseEntity<?> restore(@PathVariable Long userId, @PathVariable String kind, @PathVariable String month) throws IOException {
+        ArchivedMonth.Kind archiveKind;
+        YearMonth archiveMonth;
+        try {
+            archiveKind = ArchivedMonth.Kind.valueOf(kind.toUpperCase());
+            archiveMonth = YearMonth.parse(month);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            Map<String,Object> r = new HashMap<>();
+            r.put("error", "Kind must be meal or workout and month yyyy-MM");
+            r.put("status", 400);
+            return ResponseEntity.badRequest().body(r);
+        }
+        try {
+            archiveService.restore(userId, archiveKind, archiveMonth);
+        } catch (IllegalArgumentException e) {
+            Map<String,Object> r = new HashMap<>();
+            r.put("error", "Archive not found");
+            r.put("status", 404);
+            return ResponseEntity.status(404).body(r);
+        } catch (IllegalStateException e) {
+            // checksum mismatch or undecodable file; the rows stay archived
+            Map<String,Object> r = new HashMap<>();
+            r.put("error", e.getMessage());
+            r.put("status", 409);
+            return ResponseEntity.status(409).body(r);
+        }
+        Map<String,Object> r = new HashMap<>();
+        r.put("status", 200);
+        return ResponseEntity.ok(r);
+    }
+}
@@ -1,38 +1,61 @@
 package com.smartcoach.backend.controller;
 
+import com.smartcoach.backend.config.ShardedByUser;
 import com.smartcoach.backend.model.Meal;
 import com.smartcoach.backend.model.Workout;
 import com.smartcoach.backend.repository.MealRepository;
 import com.smartcoach.backend.repository.WorkoutRepository;
+import com.smartcoach.backend.service.DataVersionService;
+import com.smartcoach.backend.service.ResponseCacheService;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 @RestController
+@ShardedByUser
 @RequestMapping("/api/dashboard")
+@Transactional(readOnly = true)
 public class DashboardController {
     private final MealRepository mealRepository;
     private final WorkoutRepository workoutRepository;
+    private final DataVersionService dataVersionService;
+    private final ResponseCacheService responseCache;
 
-    public DashboardController(MealRepository mealRepository, WorkoutRepository workoutRepository) {
+    public DashboardController(MealRepository mealRepository, WorkoutRepository workoutRepository,
+                               DataVersionService dataVersionService, ResponseCacheService responseCache) {
         this.mealRepository = mealRepository;
         this.workoutRepository = workoutRepository;
+        this.dataVersionService = dataVersionService;
+        this.responseCache = responseCache;
     }
 
     @GetMapping("/{userId}/stats")
-    public ResponseEntity<?> getStats(@PathVariable Long userId) {
-        String todayStr = LocalDate.now().toString();
+    public ResponseEntity<?> getStats(@PathVariable Long userId, WebRequest request) {
         LocalDate today = LocalDate.now();
+        DataVersionService.DataVersion version = dataVersionService.current(userId);
+        String etag = dataVersionService.etag(userId, "stats", today.toString(), version);
+        long lastModified = lastModified(version, today);
+        if (request.checkNotModified(etag, lastModified)) return null;
+
+        Map<String,Object> resp = responseCache.get(userId, "stats", today.toString(), version, () -> buildStats(userId, today));
+        return ResponseEntity.ok().eTag(etag).lastModified(lastModified).body(resp);
+    }
+
+    private Map<String,Object> buildStats(Long userId, LocalDate today) {
+        String todayStr = today.toString();
         List<Meal> todayMeals = mealRepository.findByUserIdAndDate(userId, today);
-        List<Workout> todayWorkouts = workoutRepository.findByUserId(userId).stream().filter(w -> today.equals(w.getDate())).toList();
+        List<Workout> todayWorkouts = workoutRepository.findByUserIdAndDate(userId, today);
 
         int totalCaloriesIn = todayMeals.stream().mapToInt(m -> m.getCalories() == null ? 0 : m.getCalories()).sum();
         int totalCaloriesOut = todayWorkouts.stream().mapToInt(w -> w.getCalories() == null ? 0 : w.getCalories()).sum();
@@ -50,17 +73,27 @@ public class DashboardController {
     Map<String,Object> resp = new HashMap<>();
     resp.put("data", data);
     resp.put("status", 200);
-    return ResponseEntity.ok(resp);
+    return resp;
     }
 
     @GetMapping("/{userId}/weekly")
-    public ResponseEntity<?> getWeekly(@PathVariable Long userId) {
-        List<Map<String,Object>> trends = new ArrayList<>();
+    public ResponseEntity<?> getWeekly(@PathVariable Long userId, WebRequest request) {
         LocalDate today = LocalDate.now();
+        DataVersionService.DataVersion version = dataVersionService.current(userId);
+        String etag = dataVersionService.etag(userId, "weekly", today.toString(), version);
+        long lastModified = lastModified(version, today);
+        if (request.checkNotModified(etag, lastModified)) return null;
+
+        Map<String,Object> resp = responseCache.get(userId, "weekly", today.toString(), version, () -> buildWeekly(userId, today));
+        return ResponseEntity.ok().eTag(etag).lastModified(lastModified).body(resp);
+    }
+
+    private Map<String,Object> buildWeekly(Long userId, LocalDate today) {
+        List<Map<String,Object>> trends = new ArrayList<>();
         for (int i = 6; i >= 0; i--) {
             LocalDate day = today.minusDays(i);
             List<Meal> dayMeals = mealRepository.findByUserIdAndDate(userId, day);
-            List<Workout> dayWorkouts = workoutRepository.findByUserId(userId).stream().filter(w -> day.equals(w.getDate())).toList();
+            List<Workout> dayWorkouts = workoutRepository.findByUserIdAndDate(userId, day);
             int caloriesIn = dayMeals.stream().mapToInt(m -> m.getCalories() == null ? 0 : m.getCalories()).sum();
             int caloriesOut = dayWorkouts.stream().mapToInt(w -> w.getCalories() == null ? 0 : w.getCalories()).sum();
             int steps = dayWorkouts.stream().mapToInt(w -> (int)Math.floor((w.getDistance() == null ? 0.0 : w.getDistance()) * 1300)).sum();
@@ -74,6 +107,12 @@ public class DashboardController {
     Map<String,Object> resp = new HashMap<>();
     resp.put("data", trends);
     resp.put("status", 200);
-    return ResponseEntity.ok(resp);
+    return resp;
+    }
+
+    // both payloads are relative to today, so they also change at midnight without any write
+    private long lastModified(DataVersionService.DataVersion version, LocalDate today) {
+        long startOfDay = today.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return Math.max(version.lastModified(), startOfDay);
     }
 }
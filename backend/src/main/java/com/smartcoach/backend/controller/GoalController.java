@@ -1,25 +1,49 @@
 package com.smartcoach.backend.controller;
 
+import com.smartcoach.backend.config.LeasesOwnWrites;
+import com.smartcoach.backend.config.ShardedByUser;
 import com.smartcoach.backend.model.Goal;
 import com.smartcoach.backend.repository.GoalRepository;
+import com.smartcoach.backend.service.DataVersionService;
+import com.smartcoach.backend.service.GoalUpdateBuffer;
+import com.smartcoach.backend.service.ResponseCacheService;
+import com.smartcoach.backend.service.ShardRouter;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.HashMap;
 
 @RestController
+@ShardedByUser
 @RequestMapping("/api/goals")
 public class GoalController {
     private final GoalRepository goalRepository;
+    private final DataVersionService dataVersionService;
+    private final ResponseCacheService responseCache;
+    private final GoalUpdateBuffer goalUpdateBuffer;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardRouter shardRouter;
 
-    public GoalController(GoalRepository goalRepository) {
+    public GoalController(GoalRepository goalRepository, DataVersionService dataVersionService, ResponseCacheService responseCache,
+                          GoalUpdateBuffer goalUpdateBuffer, TransactionTemplate transactionTemplate, ShardRouter shardRouter) {
         this.goalRepository = goalRepository;
+        this.dataVersionService = dataVersionService;
+        this.responseCache = responseCache;
+        this.goalUpdateBuffer = goalUpdateBuffer;
+        this.transactionTemplate = transactionTemplate;
+        this.shardRouter = shardRouter;
     }
 
     @PostMapping("/{userId}")
+    @Transactional
     public ResponseEntity<?> createGoal(@PathVariable Long userId, @RequestBody Map<String, Object> body) {
         Goal goal = new Goal();
         goal.setUserId(userId);
@@ -30,6 +54,7 @@ public class GoalController {
         goal.setTargetDate(LocalDate.parse((String) body.get("targetDate")));
 
         Goal saved = goalRepository.save(goal);
+        dataVersionService.bump(userId);
         Map<String, Object> resp = new HashMap<>();
         resp.put("data", saved);
         resp.put("status", 201);
@@ -37,25 +62,82 @@ public class GoalController {
     }
 
     @GetMapping("/{userId}")
-    public ResponseEntity<?> getGoals(@PathVariable Long userId) {
-        List<Goal> goals = goalRepository.findByUserId(userId);
-        Map<String, Object> resp = new HashMap<>();
-        resp.put("data", goals);
-        resp.put("status", 200);
-        return ResponseEntity.ok(resp);
+    @Transactional(readOnly = true)
+    public ResponseEntity<?> getGoals(@PathVariable Long userId, WebRequest request) {
+        DataVersionService.DataVersion version = dataVersionService.current(userId);
+        String etag = dataVersionService.etag(userId, "goals", "", version);
+        if (request.checkNotModified(etag, version.lastModified())) return null;
+
+        Map<String, Object> resp = responseCache.get(userId, "goals", "", version, () -> {
+            List<Goal> goals = goalRepository.findByUserId(userId).stream().map(goalUpdateBuffer::overlay).toList();
+            Map<String, Object> r = new HashMap<>();
+            r.put("data", goals);
+            r.put("status", 200);
+            return r;
+        });
+        return ResponseEntity.ok().eTag(etag).lastModified(version.lastModified()).body(resp);
     }
 
     @PutMapping("/{userId}/{goalId}")
+    @LeasesOwnWrites
     public ResponseEntity<?> updateGoal(@PathVariable Long userId, @PathVariable Long goalId, @RequestBody Map<String, Object> body) {
+        // progress-only updates go through the write-behind buffer, which leases the user when it
+        // flushes; a goal that already has a buffered value is served from it without another findById
+        if (goalUpdateBuffer.isEnabled() && body.containsKey("currentValue") && !body.containsKey("status")) {
+            GoalUpdateBuffer.Pending buffered = goalUpdateBuffer.get(goalId);
+            Optional<Goal> found = buffered != null ? Optional.of(buffered.snapshot()) : goalRepository.findById(goalId);
+            return found.filter(g -> g.getUserId().equals(userId))
+                    .map(goal -> {
+                        if (isStale(body, goalUpdateBuffer.currentVersion(goal))) return conflict();
+                        GoalUpdateBuffer.Pending p = goalUpdateBuffer.buffer(goal, Double.parseDouble(body.get("currentValue").toString()));
+                        Map<String, Object> r = new HashMap<>();
+                        r.put("data", goalUpdateBuffer.view(p));
+                        r.put("status", 200);
+                        return ResponseEntity.ok(r);
+                    })
+                    .orElseGet(() -> {
+                        Map<String, Object> r = new HashMap<>();
+                        r.put("error", "Goal not found");
+                        r.put("status", 404);
+                        return ResponseEntity.status(404).body(r);
+                    });
+        }
+
+        // anything else is written through under the user's lease, after any buffered progress for this goal
+        try (ShardRouter.WriteLease lease = shardRouter.beginWrite(List.of(userId))) {
+            if (!lease.admits(userId)) {
+                Map<String, Object> r = new HashMap<>();
+                r.put("error", "User data is being moved, retry shortly");
+                r.put("status", 503);
+                return ResponseEntity.status(503).header("Retry-After", "5").body(r);
+            }
+            // the lease reloaded the user's directory entry, which may have changed since the request was routed
+            return shardRouter.forUser(userId, () -> writeThrough(userId, goalId, body));
+        }
+    }
+
+    private ResponseEntity<?> writeThrough(Long userId, Long goalId, Map<String, Object> body) {
+        goalUpdateBuffer.flush(goalId);
         return goalRepository.findById(goalId).filter(g -> g.getUserId().equals(userId))
                 .map(goal -> {
+                    if (isStale(body, goal.getVersion())) return conflict();
                     if (body.containsKey("currentValue")) {
                         goal.setCurrentValue(Double.parseDouble(body.get("currentValue").toString()));
                     }
                     if (body.containsKey("status")) {
                         goal.setStatus(Goal.GoalStatus.valueOf((String) body.get("status")));
                     }
-                    Goal saved = goalRepository.save(goal);
+                    Goal saved;
+                    try {
+                        // flushed inside the transaction so a version conflict surfaces here, not at commit
+                        saved = transactionTemplate.execute(status -> {
+                            Goal g = goalRepository.saveAndFlush(goal);
+                            dataVersionService.bump(userId);
+                            return g;
+                        });
+                    } catch (ObjectOptimisticLockingFailureException e) {
+                        return conflict();
+                    }
                     Map<String, Object> r = new HashMap<>();
                     r.put("data", saved);
                     r.put("status", 200);
@@ -70,10 +152,13 @@ public class GoalController {
     }
 
     @DeleteMapping("/{userId}/{goalId}")
+    @Transactional
     public ResponseEntity<?> deleteGoal(@PathVariable Long userId, @PathVariable Long goalId) {
         return goalRepository.findById(goalId).filter(g -> g.getUserId().equals(userId))
                 .map(goal -> {
+                    goalUpdateBuffer.discard(goalId);
                     goalRepository.delete(goal);
+                    dataVersionService.bump(userId);
                     Map<String, Object> r = new HashMap<>();
                     r.put("status", 200);
                     return ResponseEntity.ok(r);
@@ -85,4 +170,16 @@ public class GoalController {
                     return ResponseEntity.status(404).body(r);
                 });
     }
+
+    // clients may send the version they last read to detect a concurrent writer
+    private boolean isStale(Map<String, Object> body, Long currentVersion) {
+        return body.containsKey("version") && !Long.valueOf(body.get("version").toString()).equals(currentVersion);
+    }
+
+    private ResponseEntity<Object> conflict() {
+        Map<String, Object> r = new HashMap<>();
+        r.put("error", "Goal was modified by another writer");
+        r.put("status", 409);
+        return ResponseEntity.status(409).body(r);
+    }
 }
\ No newline at end of file
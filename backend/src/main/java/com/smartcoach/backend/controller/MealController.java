@@ -1,25 +1,34 @@
 package com.smartcoach.backend.controller;
 
+import com.smartcoach.backend.config.ShardedByUser;
 import com.smartcoach.backend.model.Meal;
 import com.smartcoach.backend.repository.MealRepository;
+import com.smartcoach.backend.service.DataVersionService;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.HashMap;
 
 @RestController
+@ShardedByUser
 @RequestMapping("/api/meals")
 public class MealController {
     private final MealRepository mealRepository;
+    private final DataVersionService dataVersionService;
 
-    public MealController(MealRepository mealRepository) {
+    public MealController(MealRepository mealRepository, DataVersionService dataVersionService) {
         this.mealRepository = mealRepository;
+        this.dataVersionService = dataVersionService;
     }
 
     @PostMapping("/{userId}")
+    @Transactional
     public ResponseEntity<?> logMeal(@PathVariable Long userId, @RequestBody Map<String, Object> body) {
         Meal m = new Meal();
         m.setUserId(userId);
@@ -31,6 +40,7 @@ public class MealController {
         m.setCarbs(body.get("carbs") == null ? 0 : Integer.parseInt(body.get("carbs").toString()));
         m.setFat(body.get("fat") == null ? 0 : Integer.parseInt(body.get("fat").toString()));
     Meal saved = mealRepository.save(m);
+    dataVersionService.bump(userId);
     Map<String,Object> resp = new HashMap<>();
     resp.put("data", saved);
     resp.put("status", 201);
@@ -38,6 +48,7 @@ public class MealController {
     }
 
     @GetMapping("/{userId}")
+    @Transactional(readOnly = true)
     public ResponseEntity<?> getMeals(@PathVariable Long userId, @RequestParam(required = false) String date) {
         List<Meal> list;
         if (date != null) {
@@ -51,19 +62,29 @@ public class MealController {
     return ResponseEntity.ok(resp);
     }
 
+    // Archived meals are listed but can't be deleted until their month is restored with
+    // POST /api/admin/archive/{userId}/meal/{month}/restore. The next archive run archives the
+    // month again while it is past the horizon.
     @DeleteMapping("/{userId}/{mealId}")
+    @Transactional
     public ResponseEntity<?> deleteMeal(@PathVariable Long userId, @PathVariable Long mealId) {
-        return mealRepository.findById(mealId).filter(m -> m.getUserId().equals(userId))
-                .map(m -> {
-                    mealRepository.delete(m);
-                    Map<String,Object> r = new HashMap<>();
-                    r.put("status", 200);
-                    return ResponseEntity.ok(r);
-                }).orElseGet(() -> {
-                    Map<String,Object> r = new HashMap<>();
-                    r.put("error", "Meal not found");
-                    r.put("status", 404);
-                    return ResponseEntity.status(404).body(r);
-                });
+        Optional<Meal> live = mealRepository.findById(mealId).filter(m -> m.getUserId().equals(userId));
+        if (live.isEmpty()) {
+            Map<String,Object> r = new HashMap<>();
+            Optional<Meal> archived = mealRepository.findByUserIdAndMealId(userId, mealId);
+            if (archived.isPresent()) {
+                r.put("error", "Meal is archived; restore " + YearMonth.from(archived.get().getDate()) + " before deleting it");
+                r.put("status", 409);
+                return ResponseEntity.status(409).body(r);
+            }
+            r.put("error", "Meal not found");
+            r.put("status", 404);
+            return ResponseEntity.status(404).body(r);
+        }
+        mealRepository.delete(live.get());
+        dataVersionService.bump(userId);
+        Map<String,Object> r = new HashMap<>();
+        r.put("status", 200);
+        return ResponseEntity.ok(r);
     }
 }
@@ -1,28 +1,47 @@
 package com.smartcoach.backend.controller;
 
+import com.smartcoach.backend.config.ShardedByUser;
 import com.smartcoach.backend.model.Workout;
 import com.smartcoach.backend.repository.WorkoutRepository;
+import com.smartcoach.backend.service.DataVersionService;
+import com.smartcoach.backend.service.ResponseCacheService;
+import com.smartcoach.backend.service.RouteIndex;
+import com.smartcoach.backend.service.RouteTrackParser;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.io.IOException;
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.HashMap;
 
 @RestController
+@ShardedByUser
 @RequestMapping("/api/workouts")
 public class WorkoutController {
     private final WorkoutRepository workoutRepository;
+    private final DataVersionService dataVersionService;
+    private final ResponseCacheService responseCache;
+    private final RouteIndex routeIndex;
 
-    public WorkoutController(WorkoutRepository workoutRepository) {
+    public WorkoutController(WorkoutRepository workoutRepository, DataVersionService dataVersionService, ResponseCacheService responseCache,
+                             RouteIndex routeIndex) {
         this.workoutRepository = workoutRepository;
+        this.dataVersionService = dataVersionService;
+        this.responseCache = responseCache;
+        this.routeIndex = routeIndex;
     }
 
     @PostMapping("/{userId}/upload")
+    @Transactional
     public ResponseEntity<?> uploadWorkout(@PathVariable Long userId,
                                            @RequestParam("file") MultipartFile file,
                                            @RequestParam Map<String,String> params) throws IOException {
@@ -41,6 +60,14 @@ public class WorkoutController {
         w.setWeatherTemp((int)(Math.random() * 15 + 10));
         w.setWeatherHumidity((int)(Math.random() * 30 + 50));
 
+        // GPX uploads carry the actual track: use its distance and duration and fingerprint the route
+        RouteTrackParser.Track track = RouteTrackParser.parse(file.getBytes());
+        if (track != null) {
+            w.setDistance(track.distanceKm());
+            w.setDurationSeconds(track.durationSeconds());
+            w.setRouteFingerprint(track.fingerprint());
+        }
+
         // Optionally save file under uploads (not used by frontend directly)
         String uploadsDir = System.getProperty("user.dir") + File.separator + "backend" + File.separator + "uploads";
         new File(uploadsDir).mkdirs();
@@ -49,6 +76,8 @@ public class WorkoutController {
         file.transferTo(dest);
 
     Workout saved = workoutRepository.save(w);
+    routeIndex.add(saved);
+    dataVersionService.bump(userId);
     Map<String,Object> resp = new HashMap<>();
     resp.put("data", saved);
     resp.put("status", 201);
@@ -56,17 +85,25 @@ public class WorkoutController {
     }
 
     @GetMapping("/{userId}")
-    public ResponseEntity<?> getWorkouts(@PathVariable Long userId) {
-        List<Workout> list = workoutRepository.findByUserId(userId);
-    Map<String,Object> resp = new HashMap<>();
-    resp.put("data", list);
-    resp.put("status", 200);
-    return ResponseEntity.ok(resp);
+    @Transactional(readOnly = true)
+    public ResponseEntity<?> getWorkouts(@PathVariable Long userId, WebRequest request) {
+        DataVersionService.DataVersion version = dataVersionService.current(userId);
+        String etag = dataVersionService.etag(userId, "workouts", "", version);
+        if (request.checkNotModified(etag, version.lastModified())) return null;
+
+        Map<String,Object> resp = responseCache.get(userId, "workouts", "", version, () -> {
+            List<Workout> list = workoutRepository.findByUserId(userId);
+            Map<String,Object> r = new HashMap<>();
+            r.put("data", list);
+            r.put("status", 200);
+            return r;
+        });
+        return ResponseEntity.ok().eTag(etag).lastModified(version.lastModified()).body(resp);
     }
 
     @GetMapping("/{userId}/{workoutId}")
     public ResponseEntity<?> getWorkoutById(@PathVariable Long userId, @PathVariable Long workoutId) {
-        return workoutRepository.findById(workoutId).filter(w -> w.getUserId().equals(userId))
+        return workoutRepository.findByUserIdAndWorkoutId(userId, workoutId)
                 .map(w -> {
                     Map<String,Object> r = new HashMap<>();
                     r.put("data", w);
@@ -81,19 +118,62 @@ public class WorkoutController {
                 });
     }
 
+    @GetMapping("/{userId}/{workoutId}/similar")
+    public ResponseEntity<?> getSimilarWorkouts(@PathVariable Long userId, @PathVariable Long workoutId) {
+        // workouts with a route are answered from the index alone
+        Long owner = routeIndex.findOwner(workoutId);
+        boolean exists = owner != null
+                ? owner.equals(userId)
+                : workoutRepository.findByUserIdAndWorkoutId(userId, workoutId).isPresent();
+        if (!exists) {
+            Map<String,Object> r = new HashMap<>();
+            r.put("error", "Workout not found");
+            r.put("status", 404);
+            return ResponseEntity.status(404).body(r);
+        }
+
+        List<Map<String,Object>> similar = new ArrayList<>();
+        for (RouteIndex.Match m : routeIndex.findSimilar(workoutId)) {
+            Map<String,Object> row = new HashMap<>();
+            row.put("workoutId", m.entry().workoutId());
+            row.put("date", m.entry().date());
+            row.put("distance", m.entry().distance());
+            row.put("durationSeconds", m.entry().durationSeconds());
+            row.put("location", m.entry().location());
+            row.put("paceSecondsPerKm", m.entry().pace() == null ? null : Math.round(m.entry().pace() * 10.0) / 10.0);
+            row.put("similarity", Math.round(m.similarity() * 100.0) / 100.0);
+            similar.add(row);
+        }
+        Map<String,Object> resp = new HashMap<>();
+        resp.put("data", similar);
+        resp.put("status", 200);
+        return ResponseEntity.ok(resp);
+    }
+
+    // Archived workouts are listed but can't be deleted until their month is restored with
+    // POST /api/admin/archive/{userId}/workout/{month}/restore. The next archive run archives the
+    // month again while it is past the horizon.
     @DeleteMapping("/{userId}/{workoutId}")
+    @Transactional
     public ResponseEntity<?> deleteWorkout(@PathVariable Long userId, @PathVariable Long workoutId) {
-        return workoutRepository.findById(workoutId).filter(w -> w.getUserId().equals(userId))
-                .map(w -> {
-                    workoutRepository.delete(w);
-                    Map<String,Object> r = new HashMap<>();
-                    r.put("status", 200);
-                    return ResponseEntity.ok(r);
-                }).orElseGet(() -> {
-                    Map<String,Object> r = new HashMap<>();
-                    r.put("error", "Workout not found");
-                    r.put("status", 404);
-                    return ResponseEntity.status(404).body(r);
-                });
+        Optional<Workout> live = workoutRepository.findById(workoutId).filter(w -> w.getUserId().equals(userId));
+        if (live.isEmpty()) {
+            Map<String,Object> r = new HashMap<>();
+            Optional<Workout> archived = workoutRepository.findByUserIdAndWorkoutId(userId, workoutId);
+            if (archived.isPresent()) {
+                r.put("error", "Workout is archived; restore " + YearMonth.from(archived.get().getDate()) + " before deleting it");
+                r.put("status", 409);
+                return ResponseEntity.status(409).body(r);
+            }
+            r.put("error", "Workout not found");
+            r.put("status", 404);
+            return ResponseEntity.status(404).body(r);
+        }
+        workoutRepository.delete(live.get());
+        routeIndex.remove(workoutId);
+        dataVersionService.bump(userId);
+        Map<String,Object> r = new HashMap<>();
+        r.put("status", 200);
+        return ResponseEntity.ok(r);
     }
 }
@@ -0,0 +1,57 @@
+package com.smartcoach.backend.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+public class ArchivedMonth {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long archivedMonthId;
+
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    private Kind kind;
+
+    // yyyy-MM
+    @Column(name = "archive_month")
+    private String month;
+    private Integer rowCount;
+    private Integer totalCalories;
+    private Double totalDistance;
+    private Long checksum;
+    private LocalDateTime archivedAt;
+
+    public enum Kind {
+        MEAL, WORKOUT
+    }
+
+    // Getters and Setters
+    public Long getArchivedMonthId() { return archivedMonthId; }
+    public void setArchivedMonthId(Long archivedMonthId) { this.archivedMonthId = archivedMonthId; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public Kind getKind() { return kind; }
+    public void setKind(Kind kind) { this.kind = kind; }
+
+    public String getMonth() { return month; }
+    public void setMonth(String month) { this.month = month; }
+
+    public Integer getRowCount() { return rowCount; }
+    public void setRowCount(Integer rowCount) { this.rowCount = rowCount; }
+
+    public Integer getTotalCalories() { return totalCalories; }
+    public void setTotalCalories(Integer totalCalories) { this.totalCalories = totalCalories; }
+
+    public Double getTotalDistance() { return totalDistance; }
+    public void setTotalDistance(Double totalDistance) { this.totalDistance = totalDistance; }
+
+    public Long getChecksum() { return checksum; }
+    public void setChecksum(Long checksum) { this.checksum = checksum; }
+
+    public LocalDateTime getArchivedAt() { return archivedAt; }
+    public void setArchivedAt(LocalDateTime archivedAt) { this.archivedAt = archivedAt; }
+}
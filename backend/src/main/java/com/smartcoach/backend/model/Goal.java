@@ -23,6 +23,10 @@ public class Goal {
     @Enumerated(EnumType.STRING)
     private GoalStatus status;
 
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
     public enum GoalType {
         WEIGHT, CALORIES_BURN, CALORIES_INTAKE, WORKOUT_FREQUENCY, DISTANCE
     }
@@ -64,4 +68,7 @@ public class Goal {
 
     public GoalStatus getStatus() { return status; }
     public void setStatus(GoalStatus status) { this.status = status; }
+
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
 }
\ No newline at end of file
@@ -0,0 +1,36 @@
+package com.smartcoach.backend.model;
+
+import jakarta.persistence.*;
+
+// Per-user counter of changes to meals, workouts and goals, behind the ETags and the response cache.
+// Kept in the database so every instance sees a write made on any of them.
+@Entity
+public class UserDataVersion {
+    @Id
+    private Long userId;
+
+    @Column(nullable = false)
+    private Long version;
+
+    // epoch millis of the last change
+    @Column(nullable = false)
+    private Long lastModified;
+
+    public UserDataVersion() {}
+
+    public UserDataVersion(Long userId) {
+        this.userId = userId;
+        this.version = 0L;
+        this.lastModified = 0L;
+    }
+
+    // Getters and Setters
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
+
+    public Long getLastModified() { return lastModified; }
+    public void setLastModified(Long lastModified) { this.lastModified = lastModified; }
+}
@@ -1,5 +1,6 @@
 package com.smartcoach.backend.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import java.time.LocalDate;
 
@@ -17,6 +18,12 @@ public class Workout {
     private String location;
     private Integer weatherTemp;
     private Integer weatherHumidity;
+    private Integer durationSeconds;
+
+    // geohash cells of the uploaded GPS track, see RouteTrackParser
+    @JsonIgnore
+    @Column(length = 4000)
+    private String routeFingerprint;
 
     // getters/setters
     public Long getWorkoutId() { return workoutId; }
@@ -45,4 +52,10 @@ public class Workout {
 
     public Integer getWeatherHumidity() { return weatherHumidity; }
     public void setWeatherHumidity(Integer weatherHumidity) { this.weatherHumidity = weatherHumidity; }
+
+    public Integer getDurationSeconds() { return durationSeconds; }
+    public void setDurationSeconds(Integer durationSeconds) { this.durationSeconds = durationSeconds; }
+
+    public String getRouteFingerprint() { return routeFingerprint; }
+    public void setRouteFingerprint(String routeFingerprint) { this.routeFingerprint = routeFingerprint; }
 }
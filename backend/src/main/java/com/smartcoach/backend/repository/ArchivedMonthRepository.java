@@ -0,0 +1,17 @@
+package com.smartcoach.backend.repository;
+
+import com.smartcoach.backend.model.ArchivedMonth;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface ArchivedMonthRepository extends JpaRepository<ArchivedMonth, Long> {
+    List<ArchivedMonth> findByUserId(Long userId);
+    Optional<ArchivedMonth> findByUserIdAndKindAndMonth(Long userId, ArchivedMonth.Kind kind, String month);
+
+    @Query("select distinct a.userId from ArchivedMonth a where a.kind = :kind")
+    List<Long> findUserIdsByKind(@Param("kind") ArchivedMonth.Kind kind);
+}
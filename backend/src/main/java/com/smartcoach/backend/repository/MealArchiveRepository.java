@@ -0,0 +1,16 @@
+package com.smartcoach.backend.repository;
+
+import com.smartcoach.backend.model.Meal;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+// Lookups that also read archived months from disk: all of a user's meals, one meal by id, or a
+// date range that reaches past the horizon.
+public interface MealArchiveRepository {
+    List<Meal> findByUserId(Long userId);
+    Optional<Meal> findByUserIdAndMealId(Long userId, Long mealId);
+    List<Meal> findByUserIdAndDate(Long userId, LocalDate date);
+    List<Meal> findByUserIdAndDateBetween(Long userId, LocalDate from, LocalDate to);
+}
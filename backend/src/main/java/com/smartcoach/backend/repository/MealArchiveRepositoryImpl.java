@@ -0,0 +1,65 @@
+package com.smartcoach.backend.repository;
+
+import com.smartcoach.backend.model.Meal;
+import com.smartcoach.backend.service.ArchiveStore;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class MealArchiveRepositoryImpl implements MealArchiveRepository {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final ArchiveStore archiveStore;
+
+    public MealArchiveRepositoryImpl(ArchiveStore archiveStore) {
+        this.archiveStore = archiveStore;
+    }
+
+    @Override
+    public List<Meal> findByUserId(Long userId) {
+        List<Meal> live = entityManager.createQuery("select m from Meal m where m.userId = :userId", Meal.class)
+                .setParameter("userId", userId)
+                .getResultList();
+        return merge(archiveStore.readMeals(userId), live);
+    }
+
+    @Override
+    public Optional<Meal> findByUserIdAndMealId(Long userId, Long mealId) {
+        Meal live = entityManager.find(Meal.class, mealId);
+        if (live != null) return Optional.of(live).filter(m -> m.getUserId().equals(userId));
+        return archiveStore.readMeals(userId).stream().filter(m -> m.getMealId().equals(mealId)).findFirst();
+    }
+
+    @Override
+    public List<Meal> findByUserIdAndDate(Long userId, LocalDate date) {
+        return findByUserIdAndDateBetween(userId, date, date);
+    }
+
+    @Override
+    public List<Meal> findByUserIdAndDateBetween(Long userId, LocalDate from, LocalDate to) {
+        List<Meal> live = entityManager.createQuery(
+                        "select m from Meal m where m.userId = :userId and m.date between :from and :to", Meal.class)
+                .setParameter("userId", userId)
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .getResultList();
+        if (!from.isBefore(archiveStore.cutoff())) return live;
+        return merge(archiveStore.readMeals(userId, from, to), live);
+    }
+
+    private static List<Meal> merge(List<Meal> archived, List<Meal> live) {
+        if (archived.isEmpty()) return live;
+        // rows may briefly exist in both places while a month is being archived
+        Map<Long, Meal> merged = new LinkedHashMap<>();
+        archived.forEach(m -> merged.put(m.getMealId(), m));
+        live.forEach(m -> merged.put(m.getMealId(), m));
+        return merged.values().stream().sorted(Comparator.comparing(Meal::getDate)).toList();
+    }
+}
@@ -2,10 +2,14 @@ package com.smartcoach.backend.repository;
 
 import com.smartcoach.backend.model.Meal;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import java.time.LocalDate;
 import java.util.List;
 
-public interface MealRepository extends JpaRepository<Meal, Long> {
-    List<Meal> findByUserId(Long userId);
-    List<Meal> findByUserIdAndDate(Long userId, LocalDate date);
+public interface MealRepository extends JpaRepository<Meal, Long>, MealArchiveRepository {
+    List<Meal> findByUserIdAndDateBefore(Long userId, LocalDate date);
+
+    @Query("select distinct m.userId from Meal m where m.date < :cutoff")
+    List<Long> findUserIdsWithMealsBefore(@Param("cutoff") LocalDate cutoff);
 }
@@ -0,0 +1,13 @@
+package com.smartcoach.backend.repository;
+
+import com.smartcoach.backend.model.UserDataVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface UserDataVersionRepository extends JpaRepository<UserDataVersion, Long> {
+    @Modifying
+    @Query("update UserDataVersion v set v.version = v.version + 1, v.lastModified = :now where v.userId = :userId")
+    int increment(@Param("userId") Long userId, @Param("now") long now);
+}
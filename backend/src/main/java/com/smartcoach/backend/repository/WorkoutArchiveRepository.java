@@ -0,0 +1,16 @@
+package com.smartcoach.backend.repository;
+
+import com.smartcoach.backend.model.Workout;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+// Lookups that also read archived months from disk: all of a user's workouts, one workout by id,
+// or a date range that reaches past the horizon.
+public interface WorkoutArchiveRepository {
+    List<Workout> findByUserId(Long userId);
+    Optional<Workout> findByUserIdAndWorkoutId(Long userId, Long workoutId);
+    List<Workout> findByUserIdAndDate(Long userId, LocalDate date);
+    List<Workout> findByUserIdAndDateBetween(Long userId, LocalDate from, LocalDate to);
+}
@@ -0,0 +1,65 @@
+package com.smartcoach.backend.repository;
+
+import com.smartcoach.backend.model.Workout;
+import com.smartcoach.backend.service.ArchiveStore;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class WorkoutArchiveRepositoryImpl implements WorkoutArchiveRepository {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final ArchiveStore archiveStore;
+
+    public WorkoutArchiveRepositoryImpl(ArchiveStore archiveStore) {
+        this.archiveStore = archiveStore;
+    }
+
+    @Override
+    public List<Workout> findByUserId(Long userId) {
+        List<Workout> live = entityManager.createQuery("select w from Workout w where w.userId = :userId", Workout.class)
+                .setParameter("userId", userId)
+                .getResultList();
+        return merge(archiveStore.readWorkouts(userId), live);
+    }
+
+    @Override
+    public Optional<Workout> findByUserIdAndWorkoutId(Long userId, Long workoutId) {
+        Workout live = entityManager.find(Workout.class, workoutId);
+        if (live != null) return Optional.of(live).filter(w -> w.getUserId().equals(userId));
+        return archiveStore.readWorkouts(userId).stream().filter(w -> w.getWorkoutId().equals(workoutId)).findFirst();
+    }
+
+    @Override
+    public List<Workout> findByUserIdAndDate(Long userId, LocalDate date) {
+        return findByUserIdAndDateBetween(userId, date, date);
+    }
+
+    @Override
+    public List<Workout> findByUserIdAndDateBetween(Long userId, LocalDate from, LocalDate to) {
+        List<Workout> live = entityManager.createQuery(
+                        "select w from Workout w where w.userId = :userId and w.date between :from and :to", Workout.class)
+                .setParameter("userId", userId)
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .getResultList();
+        if (!from.isBefore(archiveStore.cutoff())) return live;
+        return merge(archiveStore.readWorkouts(userId, from, to), live);
+    }
+
+    private static List<Workout> merge(List<Workout> archived, List<Workout> live) {
+        if (archived.isEmpty()) return live;
+        // rows may briefly exist in both places while a month is being archived
+        Map<Long, Workout> merged = new LinkedHashMap<>();
+        archived.forEach(w -> merged.put(w.getWorkoutId(), w));
+        live.forEach(w -> merged.put(w.getWorkoutId(), w));
+        return merged.values().stream().sorted(Comparator.comparing(Workout::getDate)).toList();
+    }
+}
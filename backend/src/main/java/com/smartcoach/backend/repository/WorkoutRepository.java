@@ -2,8 +2,18 @@ package com.smartcoach.backend.repository;
 
 import com.smartcoach.backend.model.Workout;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.time.LocalDate;
 import java.util.List;
 
-public interface WorkoutRepository extends JpaRepository<Workout, Long> {
-    List<Workout> findByUserId(Long userId);
+public interface WorkoutRepository extends JpaRepository<Workout, Long>, WorkoutArchiveRepository {
+    List<Workout> findByUserIdAndDateBefore(Long userId, LocalDate date);
+    List<Workout> findByUserIdAndRouteFingerprintIsNotNull(Long userId);
+
+    @Query("select distinct w.userId from Workout w where w.routeFingerprint is not null")
+    List<Long> findUserIdsWithRoutes();
+
+    @Query("select distinct w.userId from Workout w where w.date < :cutoff")
+    List<Long> findUserIdsWithWorkoutsBefore(@Param("cutoff") LocalDate cutoff);
 }
@@ -0,0 +1,288 @@
+package com.smartcoach.backend.service;
+
+import com.smartcoach.backend.model.ArchivedMonth;
+import com.smartcoach.backend.model.Meal;
+import com.smartcoach.backend.model.Workout;
+import com.smartcoach.backend.repository.ArchivedMonthRepository;
+import com.smartcoach.backend.repository.MealRepository;
+import com.smartcoach.backend.repository.WorkoutRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+public class ArchiveService {
+    private static final Logger log = LoggerFactory.getLogger(ArchiveService.class);
+
+    private final MealRepository mealRepository;
+    private final WorkoutRepository workoutRepository;
+    private final ArchivedMonthRepository archivedMonthRepository;
+    private final ArchiveStore archiveStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final DataVersionService dataVersionService;
+    private final RouteIndex routeIndex;
+    private final ShardRouter shardRouter;
+
+    // bytes is the on-disk size, which plain VACUUM doesn't shrink: space freed by archiving shows up as
+    // fewer live tuples and is reused by new rows. -1 where the database isn't PostgreSQL.
+    public record TableStats(String table, long rows, long bytes, long liveTuples, long deadTuples, double findByUserIdMillis) {}
+
+    public record ArchiveReport(int shard, LocalDate cutoff, int users, int months, long rowsArchived,
+                                List<TableStats> before, List<TableStats> after) {}
+
+    public ArchiveService(MealRepository mealRepository, WorkoutRepository workoutRepository,
+                          ArchivedMonthRepository archivedMonthRepository, ArchiveStore archiveStore,
+                          JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                          DataVersionService dataVersionService, RouteIndex routeIndex, ShardRouter shardRouter) {
+        this.mealRepository = mealRepository;
+        this.workoutRepository = workoutRepository;
+        this.archivedMonthRepository = archivedMonthRepository;
+        this.archiveStore = archiveStore;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.dataVersionService = dataVersionService;
+        this.routeIndex = routeIndex;
+        this.shardRouter = shardRouter;
+    }
+
+    // disabled unless smartcoach.archive.cron is set
+    @Scheduled(cron = "${smartcoach.archive.cron:-}")
+    public void scheduledArchive() throws IOException {
+        archive();
+    }
+
+    public synchronized List<ArchiveReport> archive() throws IOException {
+        LocalDate cutoff = archiveStore.cutoff();
+        List<ArchiveReport> reports = new ArrayList<>();
+        for (int shard : shardRouter.shardIds()) {
+            reports.add(shardRouter.onShard(shard, () -> archive(shard, cutoff)));
+        }
+        return reports;
+    }
+
+    private ArchiveReport archive(int shard, LocalDate cutoff) throws IOException {
+        Set<Long> users = new TreeSet<>(mealRepository.findUserIdsWithMealsBefore(cutoff));
+        users.addAll(workoutRepository.findUserIdsWithWorkoutsBefore(cutoff));
+        // users being moved, or whose rows here are leftovers of a move, are archived on their own shard
+        users.removeIf(u -> shardRouter.isMoving(u) || shardRouter.shardFor(u) != shard);
+
+        List<TableStats> before = tableStats(users);
+        int months = 0;
+        long rows = 0;
+        for (Long userId : users) {
+            for (Map.Entry<YearMonth, List<Meal>> month : byMonth(mealRepository.findByUserIdAndDateBefore(userId, cutoff), Meal::getDate).entrySet()) {
+                archiveMeals(userId, month.getKey(), month.getValue());
+                months++;
+                rows += month.getValue().size();
+            }
+            for (Map.Entry<YearMonth, List<Workout>> month : byMonth(workoutRepository.findByUserIdAndDateBefore(userId, cutoff), Workout::getDate).entrySet()) {
+                archiveWorkouts(userId, month.getKey(), month.getValue());
+                months++;
+                rows += month.getValue().size();
+            }
+            dataVersionService.bump(userId);
+        }
+        // deleted rows stay as dead tuples until vacuumed
+        vacuum("meal");
+        vacuum("workout");
+        List<TableStats> after = tableStats(users);
+
+        ArchiveReport report = new ArchiveReport(shard, cutoff, users.size(), months, rows, before, after);
+        log.info("Archived {} rows in {} user-months before {} on shard {}: before={} after={}", rows, months, cutoff, shard, before, after);
+        return report;
+    }
+
+    // Brings a month back into the live tables, e.g. to edit or delete rows there. It is still past
+    // the cutoff, so the next archive run archives it again.
+    public synchronized void restore(Long userId, ArchivedMonth.Kind kind, YearMonth month) throws IOException {
+        shardRouter.forUser(userId, () -> {
+            restoreOnShard(userId, kind, month);
+            return null;
+        });
+    }
+
+    private void restoreOnShard(Long userId, ArchivedMonth.Kind kind, YearMonth month) throws IOException {
+        ArchivedMonth manifest = archivedMonthRepository.findByUserIdAndKindAndMonth(userId, kind, month.toString())
+                .orElseThrow(() -> new IllegalArgumentException("No archive for " + kind + " " + month));
+        byte[] data = archiveStore.read(kind, userId, month);
+        if (ArchiveStore.checksum(data) != manifest.getChecksum()) {
+            throw new IllegalStateException("Checksum mismatch for archive " + archiveStore.path(kind, userId, month));
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            try {
+                if (kind == ArchivedMonth.Kind.MEAL) {
+                    insertMeals(ColumnarArchiveCodec.decodeMeals(data));
+                } else {
+                    List<Workout> workouts = ColumnarArchiveCodec.decodeWorkouts(data);
+                    insertWorkouts(workouts);
+                    workouts.forEach(routeIndex::add);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Unreadable archive " + archiveStore.path(kind, userId, month), e);
+            }
+            archivedMonthRepository.delete(manifest);
+        });
+        archiveStore.delete(kind, userId, month);
+        dataVersionService.bump(userId);
+        log.info("Restored {} {} rows for user {} month {}", manifest.getRowCount(), kind, userId, month);
+    }
+
+    private void archiveMeals(Long userId, YearMonth month, List<Meal> rows) throws IOException {
+        // late inserts for an already archived month are merged into the existing file
+        Map<Long, Meal> merged = new LinkedHashMap<>();
+        archiveStore.readMeals(userId, month).forEach(m -> merged.put(m.getMealId(), m));
+        rows.forEach(m -> merged.put(m.getMealId(), m));
+        List<Meal> all = new ArrayList<>(merged.values());
+
+        byte[] data = ColumnarArchiveCodec.encodeMeals(all);
+        if (!Arrays.equals(ColumnarArchiveCodec.encodeMeals(ColumnarArchiveCodec.decodeMeals(data)), data)) {
+            throw new IllegalStateException("Archive round-trip failed for meals of user " + userId + " " + month);
+        }
+        long checksum = writeVerified(ArchivedMonth.Kind.MEAL, userId, month, data);
+
+        ArchivedMonth summary = summary(userId, ArchivedMonth.Kind.MEAL, month, all.size(), checksum);
+        summary.setTotalCalories(all.stream().mapToInt(m -> m.getCalories() == null ? 0 : m.getCalories()).sum());
+        transactionTemplate.executeWithoutResult(status -> {
+            archivedMonthRepository.save(summary);
+            mealRepository.deleteAllByIdInBatch(rows.stream().map(Meal::getMealId).toList());
+        });
+    }
+
+    private void archiveWorkouts(Long userId, YearMonth month, List<Workout> rows) throws IOException {
+        Map<Long, Workout> merged = new LinkedHashMap<>();
+        archiveStore.readWorkouts(userId, month).forEach(w -> merged.put(w.getWorkoutId(), w));
+        rows.forEach(w -> merged.put(w.getWorkoutId(), w));
+        List<Workout> all = new ArrayList<>(merged.values());
+
+        byte[] data = ColumnarArchiveCodec.encodeWorkouts(all);
+        if (!Arrays.equals(ColumnarArchiveCodec.encodeWorkouts(ColumnarArchiveCodec.decodeWorkouts(data)), data)) {
+            throw new IllegalStateException("Archive round-trip failed for workouts of user " + userId + " " + month);
+        }
+        long checksum = writeVerified(ArchivedMonth.Kind.WORKOUT, userId, month, data);
+
+        ArchivedMonth summary = summary(userId, ArchivedMonth.Kind.WORKOUT, month, all.size(), checksum);
+        summary.setTotalCalories(all.stream().mapToInt(w -> w.getCalories() == null ? 0 : w.getCalories()).sum());
+        summary.setTotalDistance(all.stream().mapToDouble(w -> w.getDistance() == null ? 0.0 : w.getDistance()).sum());
+        transactionTemplate.executeWithoutResult(status -> {
+            archivedMonthRepository.save(summary);
+            workoutRepository.deleteAllByIdInBatch(rows.stream().map(Workout::getWorkoutId).toList());
+        });
+    }
+
+    // rows are only deleted once the file on disk reads back byte-for-byte
+    private long writeVerified(ArchivedMonth.Kind kind, Long userId, YearMonth month, byte[] data) throws IOException {
+        archiveStore.write(kind, userId, month, data);
+        long checksum = ArchiveStore.checksum(data);
+        if (ArchiveStore.checksum(archiveStore.read(kind, userId, month)) != checksum) {
+            throw new IllegalStateException("Verification failed for " + archiveStore.path(kind, userId, month));
+        }
+        return checksum;
+    }
+
+    private ArchivedMonth summary(Long userId, ArchivedMonth.Kind kind, YearMonth month, int rowCount, long checksum) {
+        ArchivedMonth summary = archivedMonthRepository.findByUserIdAndKindAndMonth(userId, kind, month.toString())
+                .orElseGet(ArchivedMonth::new);
+        summary.setUserId(userId);
+        summary.setKind(kind);
+        summary.setMonth(month.toString());
+        summary.setRowCount(rowCount);
+        summary.setChecksum(checksum);
+        summary.setArchivedAt(LocalDateTime.now());
+        return summary;
+    }
+
+    private void insertMeals(List<Meal> meals) {
+        jdbcTemplate.batchUpdate(
+                "insert into meal (meal_id, user_id, type, date, food, calories, protein, carbs, fat) values (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                meals, 500, (ps, m) -> {
+                    ps.setObject(1, m.getMealId());
+                    ps.setObject(2, m.getUserId());
+                    ps.setObject(3, m.getType());
+                    ps.setObject(4, m.getDate());
+                    ps.setObject(5, m.getFood());
+                    ps.setObject(6, m.getCalories());
+                    ps.setObject(7, m.getProtein());
+                    ps.setObject(8, m.getCarbs());
+                    ps.setObject(9, m.getFat());
+                });
+    }
+
+    private void insertWorkouts(List<Workout> workouts) {
+        jdbcTemplate.batchUpdate(
+                "insert into workout (workout_id, user_id, date, distance, avg_heart_rate, calories, location, weather_temp, weather_humidity, duration_seconds, route_fingerprint) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                workouts, 500, (ps, w) -> {
+                    ps.setObject(1, w.getWorkoutId());
+                    ps.setObject(2, w.getUserId());
+                    ps.setObject(3, w.getDate());
+                    ps.setObject(4, w.getDistance());
+                    ps.setObject(5, w.getAvgHeartRate());
+                    ps.setObject(6, w.getCalories());
+                    ps.setObject(7, w.getLocation());
+                    ps.setObject(8, w.getWeatherTemp());
+                    ps.setObject(9, w.getWeatherHumidity());
+                    ps.setObject(10, w.getDurationSeconds());
+                    ps.setObject(11, w.getRouteFingerprint());
+                });
+    }
+
+    private List<TableStats> tableStats(Set<Long> users) {
+        return List.of(
+                tableStats("meal", mealRepository.count(), users),
+                tableStats("workout", workoutRepository.count(), users));
+    }
+
+    private TableStats tableStats(String table, long rows, Set<Long> users) {
+        long bytes = -1, live = -1, dead = -1;
+        try {
+            Long size = jdbcTemplate.queryForObject("select pg_total_relation_size(?)", Long.class, table);
+            bytes = size == null ? -1 : size;
+            Map<String, Object> tuples = jdbcTemplate.queryForMap(
+                    "select n_live_tup, n_dead_tup from pg_stat_user_tables where relname = ?", table);
+            live = ((Number) tuples.get("n_live_tup")).longValue();
+            dead = ((Number) tuples.get("n_dead_tup")).longValue();
+        } catch (RuntimeException e) {
+            // not PostgreSQL
+        }
+        return new TableStats(table, rows, bytes, live, dead, probe(users, table));
+    }
+
+    // average latency of a full per-user scan of the live table, the query the horizon is meant to keep fast
+    private double probe(Set<Long> users, String table) {
+        if (users.isEmpty()) return 0;
+        long start = System.nanoTime();
+        users.forEach(u -> jdbcTemplate.queryForList("select * from " + table + " where user_id = ?", u));
+        return (System.nanoTime() - start) / 1_000_000.0 / users.size();
+    }
+
+    private void vacuum(String table) {
+        try {
+            jdbcTemplate.execute("vacuum analyze " + table);
+        } catch (RuntimeException e) {
+            log.debug("Skipped vacuum of {}: {}", table, e.getMessage());
+        }
+    }
+
+    private static <T> TreeMap<YearMonth, List<T>> byMonth(List<T> rows, Function<T, LocalDate> date) {
+        return rows.stream().collect(Collectors.groupingBy(r -> YearMonth.from(date.apply(r)), TreeMap::new, Collectors.toList()));
+    }
+}
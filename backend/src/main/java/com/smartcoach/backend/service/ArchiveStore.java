@@ -0,0 +1,162 @@
+package com.smartcoach.backend.service;
+
+import com.smartcoach.backend.model.ArchivedMonth;
+import com.smartcoach.backend.model.Meal;
+import com.smartcoach.backend.model.Workout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+@Service
+public class ArchiveStore {
+    private static final String SUFFIX = ".col.gz";
+
+    private final Path root;
+    private final int horizonDays;
+
+    public ArchiveStore(@Value("${smartcoach.archive.dir:archive}") String dir,
+                        @Value("${smartcoach.archive.horizon-days:730}") int horizonDays) {
+        this.root = Paths.get(dir);
+        this.horizonDays = horizonDays;
+    }
+
+    // whole months before this date live in the archive once the job has run
+    public LocalDate cutoff() {
+        return YearMonth.from(LocalDate.now().minusDays(horizonDays)).atDay(1);
+    }
+
+    public Path path(ArchivedMonth.Kind kind, Long userId, YearMonth month) {
+        return userDir(kind, userId).resolve(month + SUFFIX);
+    }
+
+    // every archived month of a user, oldest first
+    public List<YearMonth> months(ArchivedMonth.Kind kind, Long userId) {
+        Path dir = userDir(kind, userId);
+        if (!Files.isDirectory(dir)) return List.of();
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .map(name -> YearMonth.parse(name.substring(0, name.length() - SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public boolean exists(ArchivedMonth.Kind kind, Long userId, YearMonth month) {
+        return Files.exists(path(kind, userId, month));
+    }
+
+    public byte[] read(ArchivedMonth.Kind kind, Long userId, YearMonth month) throws IOException {
+        return Files.readAllBytes(path(kind, userId, month));
+    }
+
+    public void write(ArchivedMonth.Kind kind, Long userId, YearMonth month, byte[] data) throws IOException {
+        Path target = path(kind, userId, month);
+        Files.createDirectories(target.getParent());
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(tmp, data);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void delete(ArchivedMonth.Kind kind, Long userId, YearMonth month) throws IOException {
+        Files.deleteIfExists(path(kind, userId, month));
+    }
+
+    public static long checksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    public List<Meal> readMeals(Long userId, YearMonth month) throws IOException {
+        if (!exists(ArchivedMonth.Kind.MEAL, userId, month)) return new ArrayList<>();
+        return ColumnarArchiveCodec.decodeMeals(read(ArchivedMonth.Kind.MEAL, userId, month));
+    }
+
+    public List<Workout> readWorkouts(Long userId, YearMonth month) throws IOException {
+        if (!exists(ArchivedMonth.Kind.WORKOUT, userId, month)) return new ArrayList<>();
+        return ColumnarArchiveCodec.decodeWorkouts(read(ArchivedMonth.Kind.WORKOUT, userId, month));
+    }
+
+    public List<Meal> readMeals(Long userId) {
+        List<Meal> result = new ArrayList<>();
+        for (YearMonth month : months(ArchivedMonth.Kind.MEAL, userId)) {
+            try {
+                result.addAll(readMeals(userId, month));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return result;
+    }
+
+    public List<Workout> readWorkouts(Long userId) {
+        List<Workout> result = new ArrayList<>();
+        for (YearMonth month : months(ArchivedMonth.Kind.WORKOUT, userId)) {
+            try {
+                result.addAll(readWorkouts(userId, month));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return result;
+    }
+
+    public List<Meal> readMeals(Long userId, LocalDate from, LocalDate to) {
+        List<Meal> result = new ArrayList<>();
+        for (YearMonth month : archivedMonths(from, to)) {
+            try {
+                readMeals(userId, month).stream().filter(m -> inRange(m.getDate(), from, to)).forEach(result::add);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return result;
+    }
+
+    public List<Workout> readWorkouts(Long userId, LocalDate from, LocalDate to) {
+        List<Workout> result = new ArrayList<>();
+        for (YearMonth month : archivedMonths(from, to)) {
+            try {
+                readWorkouts(userId, month).stream().filter(w -> inRange(w.getDate(), from, to)).forEach(result::add);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return result;
+    }
+
+    // months of [from, to] that fall before the horizon; empty when the range is entirely recent
+    private List<YearMonth> archivedMonths(LocalDate from, LocalDate to) {
+        List<YearMonth> months = new ArrayList<>();
+        LocalDate cutoff = cutoff();
+        if (!from.isBefore(cutoff)) return months;
+        YearMonth last = YearMonth.from(to.isBefore(cutoff) ? to : cutoff.minusDays(1));
+        for (YearMonth m = YearMonth.from(from); !m.isAfter(last); m = m.plusMonths(1)) {
+            months.add(m);
+        }
+        return months;
+    }
+
+    private Path userDir(ArchivedMonth.Kind kind, Long userId) {
+        return root.resolve(kind.name().toLowerCase()).resolve(String.valueOf(userId));
+    }
+
+    private static boolean inRange(LocalDate date, LocalDate from, LocalDate to) {
+        return date != null && !date.isBefore(from) && !date.isAfter(to);
+    }
+}
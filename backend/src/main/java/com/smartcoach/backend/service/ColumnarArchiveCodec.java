@@ -0,0 +1,191 @@
+package com.smartcoach.backend.service;
+
+import com.smartcoach.backend.model.Meal;
+import com.smartcoach.backend.model.Workout;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Gzipped column-at-a-time layout: header, then every column written in full before the next one.
+// Each value is prefixed with a presence flag so nullable columns round-trip.
+public final class ColumnarArchiveCodec {
+    private static final int MAGIC = 0x53434152;
+    // 2 added the workout duration and route fingerprint columns
+    private static final byte FORMAT_VERSION = 2;
+
+    private ColumnarArchiveCodec() {}
+
+    public static byte[] encodeMeals(List<Meal> meals) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            writeHeader(out, meals.size());
+            writeLongs(out, meals, Meal::getMealId);
+            writeLongs(out, meals, Meal::getUserId);
+            writeStrings(out, meals, Meal::getType);
+            writeDates(out, meals, Meal::getDate);
+            writeStrings(out, meals, Meal::getFood);
+            writeInts(out, meals, Meal::getCalories);
+            writeInts(out, meals, Meal::getProtein);
+            writeInts(out, meals, Meal::getCarbs);
+            writeInts(out, meals, Meal::getFat);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static List<Meal> decodeMeals(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(data)))) {
+            readVersion(in);
+            List<Meal> meals = newRows(in.readInt(), Meal::new);
+            readLongs(in, meals, Meal::setMealId);
+            readLongs(in, meals, Meal::setUserId);
+            readStrings(in, meals, Meal::setType);
+            readDates(in, meals, Meal::setDate);
+            readStrings(in, meals, Meal::setFood);
+            readInts(in, meals, Meal::setCalories);
+            readInts(in, meals, Meal::setProtein);
+            readInts(in, meals, Meal::setCarbs);
+            readInts(in, meals, Meal::setFat);
+            return meals;
+        }
+    }
+
+    public static byte[] encodeWorkouts(List<Workout> workouts) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            writeHeader(out, workouts.size());
+            writeLongs(out, workouts, Workout::getWorkoutId);
+            writeLongs(out, workouts, Workout::getUserId);
+            writeDates(out, workouts, Workout::getDate);
+            writeDoubles(out, workouts, Workout::getDistance);
+            writeInts(out, workouts, Workout::getAvgHeartRate);
+            writeInts(out, workouts, Workout::getCalories);
+            writeStrings(out, workouts, Workout::getLocation);
+            writeInts(out, workouts, Workout::getWeatherTemp);
+            writeInts(out, workouts, Workout::getWeatherHumidity);
+            writeInts(out, workouts, Workout::getDurationSeconds);
+            writeStrings(out, workouts, Workout::getRouteFingerprint);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static List<Workout> decodeWorkouts(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(data)))) {
+            byte version = readVersion(in);
+            List<Workout> workouts = newRows(in.readInt(), Workout::new);
+            readLongs(in, workouts, Workout::setWorkoutId);
+            readLongs(in, workouts, Workout::setUserId);
+            readDates(in, workouts, Workout::setDate);
+            readDoubles(in, workouts, Workout::setDistance);
+            readInts(in, workouts, Workout::setAvgHeartRate);
+            readInts(in, workouts, Workout::setCalories);
+            readStrings(in, workouts, Workout::setLocation);
+            readInts(in, workouts, Workout::setWeatherTemp);
+            readInts(in, workouts, Workout::setWeatherHumidity);
+            if (version >= 2) {
+                readInts(in, workouts, Workout::setDurationSeconds);
+                readStrings(in, workouts, Workout::setRouteFingerprint);
+            }
+            return workouts;
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out, int rows) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(FORMAT_VERSION);
+        out.writeInt(rows);
+    }
+
+    private static byte readVersion(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not an archive file");
+        byte version = in.readByte();
+        if (version < 1 || version > FORMAT_VERSION) throw new IOException("Unsupported archive format version " + version);
+        return version;
+    }
+
+    private static <T> List<T> newRows(int count, Supplier<T> factory) {
+        List<T> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) rows.add(factory.get());
+        return rows;
+    }
+
+    private static <T> void writeLongs(DataOutputStream out, List<T> rows, Function<T, Long> getter) throws IOException {
+        for (T row : rows) {
+            Long v = getter.apply(row);
+            out.writeBoolean(v != null);
+            if (v != null) out.writeLong(v);
+        }
+    }
+
+    private static <T> void readLongs(DataInputStream in, List<T> rows, BiConsumer<T, Long> setter) throws IOException {
+        for (T row : rows) {
+            if (in.readBoolean()) setter.accept(row, in.readLong());
+        }
+    }
+
+    private static <T> void writeInts(DataOutputStream out, List<T> rows, Function<T, Integer> getter) throws IOException {
+        for (T row : rows) {
+            Integer v = getter.apply(row);
+            out.writeBoolean(v != null);
+            if (v != null) out.writeInt(v);
+        }
+    }
+
+    private static <T> void readInts(DataInputStream in, List<T> rows, BiConsumer<T, Integer> setter) throws IOException {
+        for (T row : rows) {
+            if (in.readBoolean()) setter.accept(row, in.readInt());
+        }
+    }
+
+    private static <T> void writeDoubles(DataOutputStream out, List<T> rows, Function<T, Double> getter) throws IOException {
+        for (T row : rows) {
+            Double v = getter.apply(row);
+            out.writeBoolean(v != null);
+            if (v != null) out.writeDouble(v);
+        }
+    }
+
+    private static <T> void readDoubles(DataInputStream in, List<T> rows, BiConsumer<T, Double> setter) throws IOException {
+        for (T row : rows) {
+            if (in.readBoolean()) setter.accept(row, in.readDouble());
+        }
+    }
+
+    private static <T> void writeDates(DataOutputStream out, List<T> rows, Function<T, LocalDate> getter) throws IOException {
+        for (T row : rows) {
+            LocalDate v = getter.apply(row);
+            out.writeBoolean(v != null);
+            if (v != null) out.writeLong(v.toEpochDay());
+        }
+    }
+
+    private static <T> void readDates(DataInputStream in, List<T> rows, BiConsumer<T, LocalDate> setter) throws IOException {
+        for (T row : rows) {
+            if (in.readBoolean()) setter.accept(row, LocalDate.ofEpochDay(in.readLong()));
+        }
+    }
+
+    private static <T> void writeStrings(DataOutputStream out, List<T> rows, Function<T, String> getter) throws IOException {
+        for (T row : rows) {
+            String v = getter.apply(row);
+            out.writeBoolean(v != null);
+            if (v != null) out.writeUTF(v);
+        }
+    }
+
+    private static <T> void readStrings(DataInputStream in, List<T> rows, BiConsumer<T, String> setter) throws IOException {
+        for (T row : rows) {
+            if (in.readBoolean()) setter.accept(row, in.readUTF());
+        }
+    }
+}
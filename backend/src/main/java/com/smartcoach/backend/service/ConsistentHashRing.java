@@ -0,0 +1,34 @@
+package com.smartcoach.backend.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+// Consistent hash of userId onto shards, with virtual nodes so adding a shard only moves
+// roughly 1/N of the users.
+public class ConsistentHashRing {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    // keeps virtual node inputs apart from small userIds, which would otherwise hash to the same points
+    private static final long NODE_SEED = 0x5348415244L;
+
+    private final TreeMap<Long, Integer> ring = new TreeMap<>();
+
+    public ConsistentHashRing(int shards, int virtualNodes) {
+        for (int shard = 0; shard < shards; shard++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                ring.put(mix(mix(NODE_SEED + shard) + v * GOLDEN_GAMMA), shard);
+            }
+        }
+    }
+
+    public int shardFor(long key) {
+        Map.Entry<Long, Integer> e = ring.ceilingEntry(mix(key + GOLDEN_GAMMA));
+        return (e != null ? e : ring.firstEntry()).getValue();
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,89 @@
+package com.smartcoach.backend.service;
+
+import com.smartcoach.backend.model.UserDataVersion;
+import com.smartcoach.backend.repository.UserDataVersionRepository;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class DataVersionService {
+    private final UserDataVersionRepository repository;
+    private final TransactionTemplate newTransaction;
+    // Users with goal updates waiting in the write-behind buffer. Their data changes without a
+    // version bump until the flush, so each buffered update draws a new sequence number that is
+    // part of the version until the flush has committed. The counter is global so that a number
+    // is never reused, even after a user's entry is cleared.
+    private final Map<Long, Buffered> buffered = new ConcurrentHashMap<>();
+    private final AtomicLong bufferedSequence = new AtomicLong();
+
+    // buffered is 0 when nothing is waiting to be written
+    public record DataVersion(long version, long lastModified, long buffered) {
+        public String tag() {
+            return buffered == 0 ? Long.toString(version) : version + "." + buffered;
+        }
+    }
+
+    public record Buffered(long sequence, long at) {}
+
+    public DataVersionService(UserDataVersionRepository repository, PlatformTransactionManager transactionManager) {
+        this.repository = repository;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    // joins the caller's transaction, so the version only moves if the write it describes commits
+    @Transactional
+    public void bump(Long userId) {
+        long now = System.currentTimeMillis();
+        if (repository.increment(userId, now) > 0) return;
+        // first change for this user: the row is created on its own so that losing an insert
+        // race with another request doesn't roll back the caller's write
+        try {
+            newTransaction.executeWithoutResult(status -> {
+                if (!repository.existsById(userId)) repository.saveAndFlush(new UserDataVersion(userId));
+            });
+        } catch (DataIntegrityViolationException e) {
+            // created concurrently
+        }
+        repository.increment(userId, now);
+    }
+
+    // called for every update taken into the buffer instead of a bump
+    public Buffered markBuffered(Long userId) {
+        Buffered mark = new Buffered(bufferedSequence.incrementAndGet(), System.currentTimeMillis());
+        buffered.put(userId, mark);
+        return mark;
+    }
+
+    public Buffered bufferedMark(Long userId) {
+        return buffered.get(userId);
+    }
+
+    // after the flush that wrote the user's buffered updates has bumped the version; a mark set by
+    // an update that arrived during the flush stays
+    public void clearBuffered(Long userId, Buffered mark) {
+        if (mark != null) buffered.remove(userId, mark);
+    }
+
+    public DataVersion current(Long userId) {
+        // the mark is read first: if a flush clears it in between, the version read after it has moved on
+        Buffered mark = buffered.get(userId);
+        long sequence = mark == null ? 0 : mark.sequence();
+        long at = mark == null ? 0 : mark.at();
+        return repository.findById(userId)
+                .map(v -> new DataVersion(v.getVersion(), Math.max(v.getLastModified(), at), sequence))
+                .orElse(new DataVersion(0, at, sequence));
+    }
+
+    public String etag(Long userId, String endpoint, String params, DataVersion version) {
+        return "\"" + userId + "-" + endpoint + "-" + Integer.toHexString(params.hashCode()) + "-" + version.tag() + "\"";
+    }
+}
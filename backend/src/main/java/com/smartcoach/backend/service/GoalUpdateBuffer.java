@@ -0,0 +1,247 @@
+package com.smartcoach.backend.service;
+
+import com.smartcoach.backend.model.Goal;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+// Write-behind buffer for currentValue updates: the latest value per goal is kept in memory
+// and written in one batched UPDATE per flush, guarded by the goal's optimistic version.
+// Buffered values are only visible on the instance that received them, so with more than one
+// instance either route a user's goal requests to one instance or set
+// smartcoach.goal-updates.write-behind=false to write every update through.
+@Service
+public class GoalUpdateBuffer {
+    private static final Logger log = LoggerFactory.getLogger(GoalUpdateBuffer.class);
+    // a snapshot read before a flush committed is at most one request old
+    private static final long FLUSHED_VERSION_TTL_MILLIS = 60_000;
+    // current_value may be a DECIMAL(10,2) column in databases created from schema.sql
+    private static final double VALUE_TOLERANCE = 0.005;
+
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    // version each goal was left at by our last flush, so updates buffered right after a flush
+    // don't start from a version read before it committed
+    private final Map<Long, Flushed> flushedVersions = new ConcurrentHashMap<>();
+    private final boolean enabled;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final DataVersionService dataVersionService;
+    private final ShardRouter shardRouter;
+    private final Counter received;
+    private final Counter flushed;
+    private final Counter conflicts;
+    private final Timer flushTimer;
+
+    // snapshot is the goal as last read from the database; baseVersion is the row version the UPDATE
+    // expects and baseValue the current_value the row had at that version
+    public record Pending(Goal snapshot, double currentValue, long baseVersion, Double baseValue, int updates) {}
+
+    private record Flushed(long version, long at) {}
+
+    public GoalUpdateBuffer(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                            DataVersionService dataVersionService, ShardRouter shardRouter, MeterRegistry registry,
+                            @Value("${smartcoach.goal-updates.write-behind:true}") boolean enabled) {
+        this.enabled = enabled;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.dataVersionService = dataVersionService;
+        this.shardRouter = shardRouter;
+        this.received = registry.counter("goal.updates.received");
+        this.flushed = registry.counter("goal.updates.flushed");
+        this.conflicts = registry.counter("goal.updates.conflicts");
+        this.flushTimer = registry.timer("goal.updates.flush");
+        Gauge.builder("goal.updates.pending", pending, Map::size).register(registry);
+        Gauge.builder("goal.updates.coalescing.ratio", this, b -> b.flushed.count() == 0 ? 0 : b.received.count() / b.flushed.count())
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Pending get(Long goalId) {
+        return pending.get(goalId);
+    }
+
+    public long currentVersion(Goal goal) {
+        Pending p = pending.get(goal.getGoalId());
+        return p != null ? p.baseVersion() : baseVersion(goal);
+    }
+
+    // the user's data version only moves when the value is flushed; until then readers' ETags
+    // change through the buffered mark
+    public Pending buffer(Goal goal, double currentValue) {
+        received.increment();
+        Pending p = pending.compute(goal.getGoalId(), (id, old) -> old == null
+                ? new Pending(goal, currentValue, baseVersion(goal), goal.getCurrentValue(), 1)
+                : new Pending(old.snapshot(), currentValue, old.baseVersion(), old.baseValue(), old.updates() + 1));
+        dataVersionService.markBuffered(goal.getUserId());
+        return p;
+    }
+
+    // the goal as readers should see it, including a buffered value not yet written
+    public Goal overlay(Goal goal) {
+        Pending p = pending.get(goal.getGoalId());
+        if (p != null) goal.setCurrentValue(p.currentValue());
+        return goal;
+    }
+
+    public Goal view(Pending p) {
+        Goal g = new Goal();
+        Goal s = p.snapshot();
+        g.setGoalId(s.getGoalId());
+        g.setUserId(s.getUserId());
+        g.setType(s.getType());
+        g.setTitle(s.getTitle());
+        g.setDescription(s.getDescription());
+        g.setTargetValue(s.getTargetValue());
+        g.setTargetDate(s.getTargetDate());
+        g.setStatus(s.getStatus());
+        g.setCurrentValue(p.currentValue());
+        g.setVersion(p.baseVersion());
+        return g;
+    }
+
+    public void discard(Long goalId) {
+        pending.remove(goalId);
+        flushedVersions.remove(goalId);
+    }
+
+    // for a request that already holds the user's write lease
+    public synchronized void flush(Long goalId) {
+        Pending p = pending.get(goalId);
+        if (p != null) write(List.of(p));
+    }
+
+    // for a shard move, which holds the user's directory row lock itself during its cut-over
+    public synchronized void flushUser(Long userId) {
+        List<Pending> batch = pending.values().stream().filter(p -> p.snapshot().getUserId().equals(userId)).toList();
+        if (!batch.isEmpty()) write(batch);
+    }
+
+    // Leases the users' directory rows first, outside the monitor: a request holding its lease may be
+    // waiting in flush(goalId). Users that are being moved stay buffered until the move completes.
+    @Scheduled(fixedDelayString = "${smartcoach.goal-updates.flush-interval-ms:500}")
+    public void flush() {
+        long expired = System.currentTimeMillis() - FLUSHED_VERSION_TTL_MILLIS;
+        flushedVersions.entrySet().removeIf(e -> e.getValue().at() < expired && !pending.containsKey(e.getKey()));
+        if (pending.isEmpty()) return;
+        Set<Long> users = new HashSet<>();
+        pending.values().forEach(p -> users.add(p.snapshot().getUserId()));
+        try (ShardRouter.WriteLease lease = shardRouter.beginWrite(users)) {
+            synchronized (this) {
+                List<Pending> batch = pending.values().stream()
+                        .filter(p -> users.contains(p.snapshot().getUserId()) && lease.admits(p.snapshot().getUserId()))
+                        .toList();
+                if (!batch.isEmpty()) write(batch);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        log.info("Flushed goal update buffer on shutdown ({} received, {} written, {} conflicts)",
+                (long) received.count(), (long) flushed.count(), (long) conflicts.count());
+    }
+
+    private void write(List<Pending> batch) {
+        // one batch per shard, each in that shard's own transaction
+        batch.stream()
+                .collect(Collectors.groupingBy(p -> shardRouter.shardFor(p.snapshot().getUserId())))
+                .forEach((shard, shardBatch) -> shardRouter.onShard(shard, () -> {
+                    writeShard(shardBatch);
+                    return null;
+                }));
+    }
+
+    private void writeShard(List<Pending> batch) {
+        Map<Long, DataVersionService.Buffered> marks = new HashMap<>();
+        batch.forEach(p -> marks.put(p.snapshot().getUserId(), dataVersionService.bufferedMark(p.snapshot().getUserId())));
+        Set<Long> users = marks.keySet();
+        int[] counts = flushTimer.record(() -> transactionTemplate.execute(status -> {
+            int[] updated = jdbcTemplate.batchUpdate(
+                    "update goal set current_value = ?, version = version + 1 where goal_id = ? and version = ?",
+                    batch, batch.size(), (ps, p) -> {
+                        ps.setDouble(1, p.currentValue());
+                        ps.setLong(2, p.snapshot().getGoalId());
+                        ps.setLong(3, p.baseVersion());
+                    })[0];
+            // goal versions changed, so cached goal payloads are stale
+            users.forEach(dataVersionService::bump);
+            return updated;
+        }));
+        flushed.increment(batch.size());
+        marks.forEach(dataVersionService::clearBuffered);
+
+        for (int i = 0; i < batch.size(); i++) {
+            Pending p = batch.get(i);
+            Long goalId = p.snapshot().getGoalId();
+            Long next = counts[i] == 0 ? reapply(p) : Long.valueOf(p.baseVersion() + 1);
+            if (next == null) {
+                // someone else changed the progress since it was read; their write wins
+                conflicts.increment();
+                log.warn("Dropped buffered currentValue {} for goal {}: version {} is stale", p.currentValue(), goalId, p.baseVersion());
+                pending.remove(goalId);
+                flushedVersions.remove(goalId);
+                continue;
+            }
+            flushedVersions.put(goalId, new Flushed(next, System.currentTimeMillis()));
+            // updates that arrived during the flush stay buffered on top of the new version
+            pending.computeIfPresent(goalId, (id, cur) -> cur == p ? null
+                    : new Pending(cur.snapshot(), cur.currentValue(), next, p.currentValue(), cur.updates()));
+        }
+    }
+
+    // The row moved on since the value was buffered. If only other columns changed (a status
+    // update, say) the buffered progress is still the latest and is applied on the new version;
+    // returns that version, or null when current_value itself was changed by another writer.
+    private Long reapply(Pending p) {
+        Long goalId = p.snapshot().getGoalId();
+        return transactionTemplate.execute(status -> {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "select current_value, version from goal where goal_id = ?", goalId);
+            if (rows.isEmpty()) return null;
+            Number value = (Number) rows.get(0).get("current_value");
+            long version = ((Number) rows.get(0).get("version")).longValue();
+            if (!sameValue(value, p.baseValue())) return null;
+            int updated = jdbcTemplate.update("update goal set current_value = ?, version = version + 1 where goal_id = ? and version = ?",
+                    p.currentValue(), goalId, version);
+            return updated == 0 ? null : version + 1;
+        });
+    }
+
+    private static boolean sameValue(Number stored, Double expected) {
+        double a = stored == null ? 0 : stored.doubleValue();
+        double b = expected == null ? 0 : expected;
+        return Math.abs(a - b) < VALUE_TOLERANCE;
+    }
+
+    private long baseVersion(Goal goal) {
+        long read = goal.getVersion() == null ? 0 : goal.getVersion();
+        Flushed flushed = flushedVersions.get(goal.getGoalId());
+        if (flushed == null) return read;
+        if (read >= flushed.version() && !pending.containsKey(goal.getGoalId())) {
+            // the database has caught up with our flush; nothing left to protect
+            flushedVersions.remove(goal.getGoalId(), flushed);
+        }
+        return Math.max(read, flushed.version());
+    }
+}
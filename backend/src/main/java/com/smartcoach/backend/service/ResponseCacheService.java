@@ -0,0 +1,69 @@
+package com.smartcoach.backend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Bounded by entry count and by the payloads' size as serialized JSON, which is about what they
+// cost to keep: a few users with years of workouts would otherwise fill the heap within the count.
+@Service
+public class ResponseCacheService {
+    private final ObjectMapper objectMapper;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    // access-ordered LRU, stale versions simply age out
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private record Entry(Map<String, Object> payload, long bytes) {}
+
+    public ResponseCacheService(ObjectMapper objectMapper,
+                                @Value("${smartcoach.response-cache.max-entries:1000}") int maxEntries,
+                                @Value("${smartcoach.response-cache.max-bytes:67108864}") long maxBytes,
+                                @Value("${smartcoach.response-cache.max-entry-bytes:1048576}") long maxEntryBytes) {
+        this.objectMapper = objectMapper;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+    }
+
+    public Map<String, Object> get(Long userId, String endpoint, String params, DataVersionService.DataVersion version,
+                                   Supplier<Map<String, Object>> loader) {
+        String key = userId + ":" + endpoint + ":" + params + ":" + version.tag();
+        synchronized (entries) {
+            Entry cached = entries.get(key);
+            if (cached != null) return cached.payload();
+        }
+        Map<String, Object> loaded = loader.get();
+        long bytes = sizeOf(loaded);
+        // payloads above the limit are served uncached rather than evicting many smaller ones
+        if (bytes > maxEntryBytes) return loaded;
+        synchronized (entries) {
+            Entry previous = entries.put(key, new Entry(loaded, bytes));
+            if (previous != null) totalBytes -= previous.bytes();
+            totalBytes += bytes;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while ((entries.size() > maxEntries || totalBytes > maxBytes) && eldest.hasNext()) {
+                totalBytes -= eldest.next().bytes();
+                eldest.remove();
+            }
+        }
+        return loaded;
+    }
+
+    private long sizeOf(Map<String, Object> payload) {
+        try {
+            return objectMapper.writeValueAsBytes(payload).length;
+        } catch (JsonProcessingException e) {
+            // not cacheable if it can't be measured
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.smartcoach.backend.service;
+
+import com.smartcoach.backend.model.ArchivedMonth;
+import com.smartcoach.backend.model.Workout;
+import com.smartcoach.backend.repository.ArchivedMonthRepository;
+import com.smartcoach.backend.repository.WorkoutRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// In-memory geohash prefix index of workout routes. Each route is filed under the coarser cells it
+// passes through, so candidates for a route are the workouts sharing at least one of those cells;
+// candidates are then scored by overlap of their fine cells. Archived workouts stay in the index.
+// Eager, so the index is built at startup rather than by the first request that needs it.
+@Service
+@Lazy(false)
+public class RouteIndex {
+    private static final Logger log = LoggerFactory.getLogger(RouteIndex.class);
+    private static final int PREFIX_PRECISION = 6;
+
+    private final WorkoutRepository workoutRepository;
+    private final ArchivedMonthRepository archivedMonthRepository;
+    private final ArchiveStore archiveStore;
+    private final ShardRouter shardRouter;
+    private final double minSimilarity;
+    private final int rebuildThreads;
+    // userId -> coarse cell -> workout ids
+    private final Map<Long, Map<String, Set<Long>>> byPrefix = new ConcurrentHashMap<>();
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    public record Entry(Long workoutId, Long userId, LocalDate date, Double distance, Integer durationSeconds,
+                        String location, Set<String> cells) {
+        // seconds per km, null without a timed track
+        public Double pace() {
+            if (durationSeconds == null || distance == null || distance <= 0) return null;
+            return durationSeconds / distance;
+        }
+    }
+
+    public record Match(Entry entry, double similarity) {}
+
+    public RouteIndex(WorkoutRepository workoutRepository, ArchivedMonthRepository archivedMonthRepository,
+                      ArchiveStore archiveStore, ShardRouter shardRouter,
+                      @Value("${smartcoach.routes.min-similarity:0.6}") double minSimilarity,
+                      @Value("${smartcoach.routes.rebuild-threads:4}") int rebuildThreads) {
+        this.workoutRepository = workoutRepository;
+        this.archivedMonthRepository = archivedMonthRepository;
+        this.archiveStore = archiveStore;
+        this.shardRouter = shardRouter;
+        this.minSimilarity = minSimilarity;
+        this.rebuildThreads = rebuildThreads;
+    }
+
+    // Loading every route can take a while, so it runs in the background and does not hold up or
+    // fail startup; until it finishes, similar-route lookups only see newly uploaded workouts.
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildInBackground() {
+        Thread rebuild = new Thread(() -> {
+            try {
+                rebuild();
+            } catch (Exception e) {
+                log.error("Route index rebuild failed; similar-route lookups are incomplete until restart", e);
+            }
+        }, "route-index-rebuild");
+        rebuild.setDaemon(true);
+        rebuild.start();
+    }
+
+    public void rebuild() throws Exception {
+        long start = System.currentTimeMillis();
+        Set<Long> users = new LinkedHashSet<>();
+        // a user's rows left on a shard they were moved away from are ignored
+        List<List<Long>> perShard = shardRouter.fanOut(shard -> {
+            Set<Long> ids = new LinkedHashSet<>(workoutRepository.findUserIdsWithRoutes());
+            ids.addAll(archivedMonthRepository.findUserIdsByKind(ArchivedMonth.Kind.WORKOUT));
+            return ids.stream().filter(u -> shardRouter.shardFor(u) == shard).toList();
+        });
+        perShard.forEach(users::addAll);
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(rebuildThreads, users.size())));
+        try {
+            List<Future<Integer>> loaded = new ArrayList<>();
+            for (Long userId : users) {
+                loaded.add(pool.submit(() -> {
+                    List<Workout> workouts = new ArrayList<>(shardRouter.forUser(userId,
+                            () -> workoutRepository.findByUserIdAndRouteFingerprintIsNotNull(userId)));
+                    archiveStore.readWorkouts(userId).stream().filter(w -> w.getRouteFingerprint() != null).forEach(workouts::add);
+                    workouts.forEach(this::add);
+                    return workouts.size();
+                }));
+            }
+            int total = 0;
+            for (Future<Integer> f : loaded) total += f.get();
+            log.info("Route index rebuilt with {} routes for {} users in {} ms", total, users.size(), System.currentTimeMillis() - start);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void add(Workout w) {
+        if (w.getRouteFingerprint() == null || w.getRouteFingerprint().isEmpty()) return;
+        Entry entry = new Entry(w.getWorkoutId(), w.getUserId(), w.getDate(), w.getDistance(), w.getDurationSeconds(),
+                w.getLocation(), RouteTrackParser.cells(w.getRouteFingerprint()));
+        remove(w.getWorkoutId());
+        entries.put(entry.workoutId(), entry);
+        Map<String, Set<Long>> prefixes = byPrefix.computeIfAbsent(entry.userId(), id -> new ConcurrentHashMap<>());
+        for (String prefix : prefixes(entry.cells())) {
+            prefixes.computeIfAbsent(prefix, p -> ConcurrentHashMap.newKeySet()).add(entry.workoutId());
+        }
+    }
+
+    public void remove(Long workoutId) {
+        Entry entry = entries.remove(workoutId);
+        if (entry == null) return;
+        Map<String, Set<Long>> prefixes = byPrefix.get(entry.userId());
+        if (prefixes == null) return;
+        for (String prefix : prefixes(entry.cells())) {
+            Set<Long> ids = prefixes.get(prefix);
+            if (ids != null) ids.remove(workoutId);
+        }
+    }
+
+    public Long findOwner(Long workoutId) {
+        Entry entry = entries.get(workoutId);
+        return entry == null ? null : entry.userId();
+    }
+
+    // the user's other workouts on the same route, fastest pace first (untimed ones last)
+    // the user's workouts on a similar route up to the target's date, fastest first
+    public List<Match> findSimilar(Long workoutId) {
+        Entry target = entries.get(workoutId);
+        if (target == null) return List.of();
+        Map<String, Set<Long>> prefixes = byPrefix.getOrDefault(target.userId(), Map.of());
+
+        Set<Long> candidates = new HashSet<>();
+        for (String prefix : prefixes(target.cells())) {
+            candidates.addAll(prefixes.getOrDefault(prefix, Set.of()));
+        }
+        candidates.remove(workoutId);
+
+        List<Match> matches = new ArrayList<>();
+        for (Long id : candidates) {
+            Entry e = entries.get(id);
+            if (e == null) continue;
+            // a workout is compared with the ones before it, not with later ones
+            if (target.date() != null && e.date() != null && e.date().isAfter(target.date())) continue;
+            double similarity = jaccard(target.cells(), e.cells());
+            if (similarity >= minSimilarity) matches.add(new Match(e, similarity));
+        }
+        matches.sort(Comparator.comparing((Match m) -> m.entry().pace(), Comparator.nullsLast(Comparator.naturalOrder())));
+        return matches;
+    }
+
+    private static Set<String> prefixes(Set<String> cells) {
+        Set<String> prefixes = new HashSet<>();
+        for (String cell : cells) prefixes.add(cell.substring(0, Math.min(PREFIX_PRECISION, cell.length())));
+        return prefixes;
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        int common = 0;
+        for (String cell : a) if (b.contains(cell)) common++;
+        int union = a.size() + b.size() - common;
+        return union == 0 ? 0 : (double) common / union;
+    }
+}
@@ -0,0 +1,108 @@
+package com.smartcoach.backend.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Extracts track points from GPX uploads and reduces them to a route fingerprint: the sequence of
+// geohash cells the track passes through, with consecutive repeats removed.
+public final class RouteTrackParser {
+    public static final int CELL_PRECISION = 7;
+    private static final int MAX_FINGERPRINT_LENGTH = 4000;
+
+    private static final Pattern TRKPT = Pattern.compile("<trkpt\\b([^>]*?)(?:/>|>(.*?)</trkpt>)", Pattern.DOTALL);
+    private static final Pattern LAT = Pattern.compile("\\blat\\s*=\\s*\"([-+0-9.eE]+)\"");
+    private static final Pattern LON = Pattern.compile("\\blon\\s*=\\s*\"([-+0-9.eE]+)\"");
+    private static final Pattern TIME = Pattern.compile("<time>([^<]+)</time>");
+
+    private RouteTrackParser() {}
+
+    public record TrackPoint(double lat, double lon, OffsetDateTime time) {}
+
+    public record Track(List<TrackPoint> points, double distanceKm, Integer durationSeconds, String fingerprint) {}
+
+    // null when the upload is not a GPX file with at least two track points
+    public static Track parse(byte[] content) {
+        String text = new String(content, StandardCharsets.UTF_8);
+        if (!text.contains("<trkpt")) return null;
+
+        List<TrackPoint> points = new ArrayList<>();
+        Matcher m = TRKPT.matcher(text);
+        while (m.find()) {
+            Matcher lat = LAT.matcher(m.group(1));
+            Matcher lon = LON.matcher(m.group(1));
+            if (!lat.find() || !lon.find()) continue;
+            double latitude;
+            double longitude;
+            try {
+                latitude = Double.parseDouble(lat.group(1));
+                longitude = Double.parseDouble(lon.group(1));
+            } catch (NumberFormatException e) {
+                // skip the point, like one without coordinates
+                continue;
+            }
+            OffsetDateTime time = null;
+            if (m.group(2) != null) {
+                Matcher t = TIME.matcher(m.group(2));
+                if (t.find()) {
+                    try {
+                        time = OffsetDateTime.parse(t.group(1).trim());
+                    } catch (DateTimeParseException ignored) {
+                        // leave the point untimed
+                    }
+                }
+            }
+            points.add(new TrackPoint(latitude, longitude, time));
+        }
+        if (points.size() < 2) return null;
+        return new Track(points, distanceKm(points), durationSeconds(points), fingerprint(points));
+    }
+
+    public static String fingerprint(List<TrackPoint> points) {
+        List<String> cells = new ArrayList<>();
+        for (TrackPoint p : points) {
+            String cell = Geohash.encode(p.lat(), p.lon(), CELL_PRECISION);
+            if (cells.isEmpty() || !cells.get(cells.size() - 1).equals(cell)) cells.add(cell);
+        }
+        // very long tracks are downsampled to fit the column
+        int maxCells = MAX_FINGERPRINT_LENGTH / (CELL_PRECISION + 1);
+        int step = (cells.size() + maxCells - 1) / maxCells;
+        List<String> kept = new ArrayList<>();
+        for (int i = 0; i < cells.size(); i += step) kept.add(cells.get(i));
+        return String.join(",", kept);
+    }
+
+    public static Set<String> cells(String fingerprint) {
+        return new LinkedHashSet<>(List.of(fingerprint.split(",")));
+    }
+
+    private static double distanceKm(List<TrackPoint> points) {
+        double km = 0;
+        for (int i = 1; i < points.size(); i++) {
+            km += haversineKm(points.get(i - 1), points.get(i));
+        }
+        return Math.round(km * 100.0) / 100.0;
+    }
+
+    private static Integer durationSeconds(List<TrackPoint> points) {
+        OffsetDateTime first = points.get(0).time();
+        OffsetDateTime last = points.get(points.size() - 1).time();
+        if (first == null || last == null || !last.isAfter(first)) return null;
+        return (int) Duration.between(first, last).getSeconds();
+    }
+
+    private static double haversineKm(TrackPoint a, TrackPoint b) {
+        double dLat = Math.toRadians(b.lat() - a.lat());
+        double dLon = Math.toRadians(b.lon() - a.lon());
+        double h = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(a.lat())) * Math.cos(Math.toRadians(b.lat())) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 6371.0 * 2 * Math.atan2(Math.sqrt(h), Math.sqrt(1 - h));
+    }
+}
@@ -0,0 +1,260 @@
+package com.smartcoach.backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Moves one user's rows to another shard while the user stays online: a bulk copy in id order
+// first, then a short cut-over in which writes are refused, the copy is reconciled and verified
+// row by row, and the directory is switched. Source rows are deleted only after the switch, once
+// other instances' cached directory entries have expired.
+@Service
+public class ShardRebalancer {
+    private static final Logger log = LoggerFactory.getLogger(ShardRebalancer.class);
+
+    // table -> id column; goal, archived_month and user_data_version rows are updated in place, so they are recopied at cut-over
+    private static final Map<String, String> TABLES = new LinkedHashMap<>();
+    private static final Set<String> MUTABLE = Set.of("goal", "archived_month", "user_data_version");
+
+    static {
+        TABLES.put("workout", "workout_id");
+        TABLES.put("meal", "meal_id");
+        TABLES.put("goal", "goal_id");
+        TABLES.put("archived_month", "archived_month_id");
+        TABLES.put("user_data_version", "user_id");
+    }
+
+    private final ShardRouter shardRouter;
+    private final GoalUpdateBuffer goalUpdateBuffer;
+    private final ArchiveService archiveService;
+    private final DataVersionService dataVersionService;
+    private final int batchSize;
+    private final long drainTimeoutMillis;
+
+    public record MoveReport(Long userId, int from, int to, long rowsCopied, long cutOverMillis, long millis) {}
+
+    public record RebalanceReport(int moved, int unpinned, List<Long> failed, int remaining) {}
+
+    public ShardRebalancer(ShardRouter shardRouter, GoalUpdateBuffer goalUpdateBuffer, ArchiveService archiveService,
+                           DataVersionService dataVersionService,
+                           @Value("${smartcoach.sharding.move-batch-size:500}") int batchSize,
+                           @Value("${smartcoach.sharding.cutover-drain-timeout-ms:5000}") long drainTimeoutMillis) {
+        this.shardRouter = shardRouter;
+        this.goalUpdateBuffer = goalUpdateBuffer;
+        this.archiveService = archiveService;
+        this.dataVersionService = dataVersionService;
+        this.batchSize = batchSize;
+        this.drainTimeoutMillis = drainTimeoutMillis;
+    }
+
+    public synchronized MoveReport moveUser(Long userId, int target) {
+        if (!shardRouter.isSharded()) throw new IllegalStateException("Sharding is not enabled");
+        if (!shardRouter.isRegistered(userId)) throw new IllegalArgumentException("Unknown user " + userId);
+        int source = shardRouter.shardFor(userId);
+        JdbcTemplate to = new JdbcTemplate(shardRouter.dataSource(target));
+        if (source == target) return new MoveReport(userId, source, target, 0, 0, 0);
+        JdbcTemplate from = new JdbcTemplate(shardRouter.dataSource(source));
+
+        long start = System.currentTimeMillis();
+        long copied = 0;
+        boolean switched = false;
+        try {
+            // leftovers of an earlier aborted move would collide with the copy
+            TABLES.forEach((table, id) -> to.update("delete from " + table + " where user_id = ?", userId));
+            // phase 1: bulk copy while the user keeps reading and writing on the source
+            for (Map.Entry<String, String> t : TABLES.entrySet()) {
+                copied += copyAll(from, to, t.getKey(), t.getValue(), userId);
+            }
+
+            long cutOverStart = System.currentTimeMillis();
+            // archiving deletes and rewrites rows, so it must not run for this user during the cut-over
+            synchronized (archiveService) {
+                // waits for writes admitted on any instance, then pushes buffered goal values
+                shardRouter.beginMove(userId, drainTimeoutMillis);
+                goalUpdateBuffer.flushUser(userId);
+
+                for (Map.Entry<String, String> t : TABLES.entrySet()) {
+                    copied += reconcile(from, to, t.getKey(), t.getValue(), userId);
+                }
+                verify(from, to, source, target, userId);
+                shardRouter.relocate(userId, target);
+                switched = true;
+                shardRouter.setMoving(userId, false);
+            }
+            long cutOverMillis = System.currentTimeMillis() - cutOverStart;
+
+            // reads on other instances may still go to the source until their directory entry expires
+            Thread.sleep(shardRouter.directoryTtlMillis());
+
+            for (Map.Entry<String, String> t : TABLES.entrySet()) {
+                deleteAll(from, t.getKey(), t.getValue(), userId);
+            }
+            shardRouter.forUser(userId, () -> {
+                dataVersionService.bump(userId);
+                return null;
+            });
+
+            MoveReport report = new MoveReport(userId, source, target, copied, cutOverMillis, System.currentTimeMillis() - start);
+            log.info("Moved user {} from shard {} to shard {}: {} rows copied, writes blocked for {} ms, {} ms total",
+                    userId, source, target, copied, cutOverMillis, report.millis());
+            return report;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(to, userId, switched);
+            throw new IllegalStateException("Interrupted while moving user " + userId, e);
+        } catch (RuntimeException e) {
+            abort(to, userId, switched);
+            throw e;
+        }
+    }
+
+    // Pins every user to the shard they are on now. Run before adding a shard: the ring changes with
+    // the shard count, and users without a directory row would otherwise be looked up on a new shard.
+    public synchronized int pinAll(List<Long> userIds) {
+        if (!shardRouter.isSharded()) throw new IllegalStateException("Sharding is not enabled");
+        int pinned = shardRouter.pin(userIds);
+        log.info("Pinned {} of {} users to their current shard", pinned, userIds.size());
+        return pinned;
+    }
+
+    // Moves up to limit pinned users to their shard on the current ring and drops the directory rows
+    // that are no longer needed, so the directory shrinks back after a shard was added.
+    public synchronized RebalanceReport rebalance(int limit) {
+        if (!shardRouter.isSharded()) throw new IllegalStateException("Sharding is not enabled");
+        int moved = 0;
+        int unpinned = 0;
+        List<Long> failed = new ArrayList<>();
+        List<Long> pinned = shardRouter.pinnedUsers();
+        for (Long userId : pinned) {
+            if (moved + failed.size() >= limit) break;
+            int hashed = shardRouter.hashedShardFor(userId);
+            if (shardRouter.shardFor(userId) != hashed) {
+                try {
+                    moveUser(userId, hashed);
+                    moved++;
+                } catch (RuntimeException e) {
+                    log.warn("Rebalance could not move user {} to shard {}: {}", userId, hashed, e.getMessage());
+                    failed.add(userId);
+                    continue;
+                }
+            }
+            if (shardRouter.unpin(userId)) unpinned++;
+        }
+        RebalanceReport report = new RebalanceReport(moved, unpinned, failed, shardRouter.pinnedUsers().size());
+        log.info("Rebalance moved {} users, unpinned {}, {} failed, {} directory rows left", moved, unpinned, failed.size(), report.remaining());
+        return report;
+    }
+
+    // Compares every row by id and content, so a delete and an insert can't cancel out.
+    // Package-private so tests can interfere between reconcile and verification.
+    void verify(JdbcTemplate from, JdbcTemplate to, int source, int target, Long userId) {
+        for (Map.Entry<String, String> t : TABLES.entrySet()) {
+            Map<Long, Integer> expected = rowHashes(from, t.getKey(), t.getValue(), userId);
+            Map<Long, Integer> actual = rowHashes(to, t.getKey(), t.getValue(), userId);
+            if (!expected.equals(actual)) {
+                long differing = expected.entrySet().stream().filter(e -> !e.getValue().equals(actual.get(e.getKey()))).count()
+                        + actual.keySet().stream().filter(id -> !expected.containsKey(id)).count();
+                throw new IllegalStateException("Verification failed for " + t.getKey() + ": " + differing + " of " + expected.size()
+                        + " rows differ between shard " + source + " and shard " + target);
+            }
+        }
+    }
+
+    private Map<Long, Integer> rowHashes(JdbcTemplate jdbc, String table, String idColumn, Long userId) {
+        Map<Long, Integer> hashes = new HashMap<>();
+        jdbc.query("select * from " + table + " where user_id = ?", rs -> {
+            int columns = rs.getMetaData().getColumnCount();
+            Object[] values = new Object[columns];
+            for (int i = 0; i < columns; i++) {
+                Object value = rs.getObject(i + 1);
+                values[i] = value instanceof byte[] bytes ? Arrays.hashCode(bytes) : value;
+            }
+            hashes.put(rs.getLong(idColumn), Arrays.deepHashCode(values));
+        }, userId);
+        return hashes;
+    }
+
+    private void abort(JdbcTemplate to, Long userId, boolean switched) {
+        if (!switched) {
+            // the source is still authoritative; drop the partial copy
+            TABLES.forEach((table, id) -> to.update("delete from " + table + " where user_id = ?", userId));
+        }
+        shardRouter.setMoving(userId, false);
+    }
+
+    private long copyAll(JdbcTemplate from, JdbcTemplate to, String table, String idColumn, Long userId) {
+        long copied = 0;
+        long lastId = Long.MIN_VALUE;
+        while (true) {
+            List<Map<String, Object>> rows = from.queryForList("select * from " + table + " where user_id = ? and " + idColumn
+                    + " > ? order by " + idColumn + " limit ?", userId, lastId, batchSize);
+            if (rows.isEmpty()) return copied;
+            insert(to, table, rows);
+            copied += rows.size();
+            lastId = ((Number) rows.get(rows.size() - 1).get(idColumn)).longValue();
+        }
+    }
+
+    // brings the target up to date with what changed on the source since the bulk copy
+    private long reconcile(JdbcTemplate from, JdbcTemplate to, String table, String idColumn, Long userId) {
+        if (MUTABLE.contains(table)) {
+            to.update("delete from " + table + " where user_id = ?", userId);
+            return copyAll(from, to, table, idColumn, userId);
+        }
+        Set<Long> sourceIds = ids(from, table, idColumn, userId);
+        Set<Long> targetIds = ids(to, table, idColumn, userId);
+
+        List<Long> deleted = targetIds.stream().filter(id -> !sourceIds.contains(id)).toList();
+        List<Long> added = sourceIds.stream().filter(id -> !targetIds.contains(id)).toList();
+        NamedParameterJdbcTemplate source = new NamedParameterJdbcTemplate(from);
+        NamedParameterJdbcTemplate dest = new NamedParameterJdbcTemplate(to);
+        for (List<Long> chunk : chunks(deleted)) {
+            dest.update("delete from " + table + " where " + idColumn + " in (:ids)", Map.of("ids", chunk));
+        }
+        for (List<Long> chunk : chunks(added)) {
+            insert(to, table, source.queryForList("select * from " + table + " where " + idColumn + " in (:ids)", Map.of("ids", chunk)));
+        }
+        return added.size();
+    }
+
+    private void deleteAll(JdbcTemplate from, String table, String idColumn, Long userId) {
+        String sql = "delete from " + table + " where " + idColumn + " in (select " + idColumn + " from " + table
+                + " where user_id = ? limit ?)";
+        while (from.update(sql, userId, batchSize) > 0) {
+            // small batches keep row locks and WAL bursts short on the source
+        }
+    }
+
+    private void insert(JdbcTemplate to, String table, List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) return;
+        List<String> columns = new ArrayList<>(rows.get(0).keySet());
+        String sql = "insert into " + table + " (" + String.join(", ", columns) + ") values ("
+                + columns.stream().map(c -> "?").collect(Collectors.joining(", ")) + ")";
+        to.batchUpdate(sql, rows, batchSize, (ps, row) -> {
+            for (int i = 0; i < columns.size(); i++) ps.setObject(i + 1, row.get(columns.get(i)));
+        });
+    }
+
+    private Set<Long> ids(JdbcTemplate jdbc, String table, String idColumn, Long userId) {
+        return new HashSet<>(jdbc.queryForList("select " + idColumn + " from " + table + " where user_id = ?", Long.class, userId));
+    }
+
+    private List<List<Long>> chunks(List<Long> ids) {
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += batchSize) chunks.add(ids.subList(i, Math.min(ids.size(), i + batchSize)));
+        return chunks;
+    }
+}
@@ -0,0 +1,308 @@
+package com.smartcoach.backend.service;
+
+import com.smartcoach.backend.config.ShardRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+// Decides which shard holds a user's data: the user_shard directory for users that were moved or
+// pinned, otherwise the consistent hash of the userId. Without sharding there is a single shard 0.
+// The directory table is shared by all instances; lookups are cached for directoryTtlMillis, and
+// writes always check it afresh under a lock on the user's catalog row (see WriteLease).
+public class ShardRouter {
+    // cached entries are only swept once the cache is this large
+    private static final int DIRECTORY_SWEEP_SIZE = 100_000;
+
+    private final Map<Integer, DataSource> shards;
+    private final ConsistentHashRing ring;
+    private final JdbcTemplate catalog;
+    private final long directoryTtlMillis;
+    private final Map<Long, Placement> directory = new ConcurrentHashMap<>();
+    // catalog connections held by write leases, separate from shard 0's pool so that leases
+    // can't starve the writes they protect
+    private final DataSource lockPool;
+    private final String shareLock;
+
+    // shard is null for users without a directory row
+    private record Placement(Integer shard, boolean moving, long loadedAt) {}
+
+    public ShardRouter(Map<Integer, DataSource> shards, DataSource lockPool, int virtualNodes, long directoryTtlMillis) {
+        this.shards = shards;
+        this.ring = new ConsistentHashRing(shards.size(), virtualNodes);
+        this.catalog = new JdbcTemplate(shards.get(ShardRoutingDataSource.CATALOG));
+        this.lockPool = lockPool;
+        this.directoryTtlMillis = directoryTtlMillis;
+        // the key share lock doesn't block profile updates; H2 has no shared row locks, so writers of
+        // the same user are serialized there
+        String product = catalog.execute((ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName());
+        this.shareLock = "H2".equalsIgnoreCase(product) ? "for update" : "for key share";
+    }
+
+    private ShardRouter() {
+        this.shards = Map.of();
+        this.ring = null;
+        this.catalog = null;
+        this.lockPool = null;
+        this.directoryTtlMillis = 0;
+        this.shareLock = null;
+    }
+
+    public static ShardRouter single() {
+        return new ShardRouter();
+    }
+
+    public boolean isSharded() {
+        return ring != null;
+    }
+
+    public List<Integer> shardIds() {
+        return isSharded() ? new ArrayList<>(shards.keySet()) : List.of(ShardRoutingDataSource.CATALOG);
+    }
+
+    public DataSource dataSource(int shard) {
+        DataSource ds = shards.get(shard);
+        if (ds == null) throw new IllegalArgumentException("Unknown shard " + shard);
+        return ds;
+    }
+
+    public int shardFor(Long userId) {
+        if (!isSharded()) return ShardRoutingDataSource.CATALOG;
+        Integer placed = placement(userId, false).shard();
+        return placed != null ? placed : ring.shardFor(userId);
+    }
+
+    public long directoryTtlMillis() {
+        return directoryTtlMillis;
+    }
+
+    public int hashedShardFor(Long userId) {
+        return isSharded() ? ring.shardFor(userId) : ShardRoutingDataSource.CATALOG;
+    }
+
+    public boolean isMoving(Long userId) {
+        return isSharded() && placement(userId, false).moving();
+    }
+
+    // A catalog transaction holding a share lock on the users' rows for the duration of a write. A
+    // cut-over locks the row exclusively before flagging the user as moving, so it waits for every
+    // admitted write, on any instance, and writes that start later see the flag.
+    public static final class WriteLease implements AutoCloseable {
+        private final Connection connection;
+        private final Set<Long> moving;
+
+        private WriteLease(Connection connection, Set<Long> moving) {
+            this.connection = connection;
+            this.moving = moving;
+        }
+
+        public boolean admits(Long userId) {
+            return !moving.contains(userId);
+        }
+
+        @Override
+        public void close() {
+            if (connection == null) return;
+            try {
+                connection.commit();
+            } catch (SQLException e) {
+                // nothing was written; closing the connection releases the locks anyway
+            } finally {
+                JdbcUtils.closeConnection(connection);
+            }
+        }
+    }
+
+    public WriteLease beginWrite(Collection<Long> userIds) {
+        if (!isSharded() || userIds.isEmpty()) return new WriteLease(null, Set.of());
+        Connection connection = lockConnection();
+        try {
+            connection.setAutoCommit(false);
+            JdbcTemplate jdbc = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+            String in = userIds.stream().map(id -> "?").collect(Collectors.joining(", "));
+            Object[] ids = userIds.toArray();
+            jdbc.queryForList("select user_id from users where user_id in (" + in + ") " + shareLock, Long.class, ids);
+
+            long now = System.currentTimeMillis();
+            Map<Long, Placement> placed = new HashMap<>();
+            jdbc.query("select user_id, shard_id, moving from user_shard where user_id in (" + in + ")", rs -> {
+                placed.put(rs.getLong("user_id"), new Placement(rs.getInt("shard_id"), rs.getBoolean("moving"), now));
+            }, ids);
+            Set<Long> moving = new HashSet<>();
+            for (Long userId : userIds) {
+                Placement p = placed.getOrDefault(userId, new Placement(null, false, now));
+                directory.put(userId, p);
+                if (p.moving()) moving.add(userId);
+            }
+            return new WriteLease(connection, moving);
+        } catch (SQLException | RuntimeException e) {
+            JdbcUtils.closeConnection(connection);
+            if (e instanceof RuntimeException re) throw re;
+            throw new IllegalStateException("Could not lease directory rows", e);
+        }
+    }
+
+    // not bound to the caller's transaction: a lease outlives it and is released on its own
+    private Connection lockConnection() {
+        try {
+            return lockPool.getConnection();
+        } catch (SQLException e) {
+            throw new IllegalStateException("No catalog connection for directory locks", e);
+        }
+    }
+
+    // only registered users can be moved, as the cut-over locks their users row
+    public boolean isRegistered(Long userId) {
+        return !catalog.queryForList("select user_id from users where user_id = ?", Long.class, userId).isEmpty();
+    }
+
+    // Flags the user as moving once the writes holding leases have finished.
+    public void beginMove(Long userId, long timeoutMillis) {
+        Connection connection = lockConnection();
+        try {
+            connection.setAutoCommit(false);
+            JdbcTemplate jdbc = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+            jdbc.setQueryTimeout((int) Math.max(1, (timeoutMillis + 999) / 1000));
+            if (jdbc.queryForList("select user_id from users where user_id = ? for update", Long.class, userId).isEmpty()) {
+                throw new IllegalArgumentException("Unknown user " + userId);
+            }
+            markMoving(jdbc, userId, true);
+            connection.commit();
+        } catch (TransientDataAccessException e) {
+            throw new IllegalStateException("Writes for user " + userId + " still running after " + timeoutMillis + " ms", e);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not flag user " + userId + " as moving", e);
+        } finally {
+            JdbcUtils.closeConnection(connection);
+            directory.remove(userId);
+        }
+    }
+
+    // writes for a moving user are rejected until the cut-over completes
+    public void setMoving(Long userId, boolean isMoving) {
+        markMoving(catalog, userId, isMoving);
+        directory.remove(userId);
+    }
+
+    private void markMoving(JdbcTemplate jdbc, Long userId, boolean isMoving) {
+        if (jdbc.update("update user_shard set moving = ? where user_id = ?", isMoving, userId) == 0 && isMoving) {
+            jdbc.update("insert into user_shard (user_id, shard_id, moving) values (?, ?, true)", userId, shardFor(userId));
+        }
+    }
+
+    public void relocate(Long userId, int shard) {
+        if (catalog.update("update user_shard set shard_id = ? where user_id = ?", shard, userId) == 0) {
+            catalog.update("insert into user_shard (user_id, shard_id, moving) values (?, ?, false)", userId, shard);
+        }
+        directory.remove(userId);
+    }
+
+    // Records the current shard of users that have no directory row, so they stay put when the
+    // ring changes. Returns the number of users pinned.
+    public int pin(List<Long> userIds) {
+        int pinned = 0;
+        for (Long userId : userIds) {
+            pinned += catalog.update("insert into user_shard (user_id, shard_id, moving) select ?, ?, false"
+                    + " where not exists (select 1 from user_shard where user_id = ?)", userId, shardFor(userId), userId);
+            directory.remove(userId);
+        }
+        return pinned;
+    }
+
+    // drops the directory row of a user that already sits on its hashed shard
+    public boolean unpin(Long userId) {
+        int removed = catalog.update("delete from user_shard where user_id = ? and shard_id = ? and moving = false",
+                userId, hashedShardFor(userId));
+        directory.remove(userId);
+        return removed > 0;
+    }
+
+    public List<Long> pinnedUsers() {
+        return catalog.queryForList("select user_id from user_shard where moving = false order by user_id", Long.class);
+    }
+
+    private Placement placement(Long userId, boolean fresh) {
+        long now = System.currentTimeMillis();
+        Placement cached = directory.get(userId);
+        if (!fresh && cached != null && now - cached.loadedAt() < directoryTtlMillis) return cached;
+        List<Placement> rows = catalog.query("select shard_id, moving from user_shard where user_id = ?",
+                (rs, i) -> new Placement(rs.getInt("shard_id"), rs.getBoolean("moving"), now), userId);
+        Placement loaded = rows.isEmpty() ? new Placement(null, false, now) : rows.get(0);
+        if (directory.size() >= DIRECTORY_SWEEP_SIZE) {
+            directory.values().removeIf(p -> now - p.loadedAt() >= directoryTtlMillis);
+        }
+        directory.put(userId, loaded);
+        return loaded;
+    }
+
+    @FunctionalInterface
+    public interface ShardWork<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    public <T, E extends Exception> T onShard(int shard, ShardWork<T, E> work) throws E {
+        // has no effect inside a transaction that already holds a connection
+        Integer previous = ShardRoutingDataSource.current();
+        ShardRoutingDataSource.use(shard);
+        try {
+            return work.run();
+        } finally {
+            ShardRoutingDataSource.use(previous);
+        }
+    }
+
+    public <T, E extends Exception> T forUser(Long userId, ShardWork<T, E> work) throws E {
+        return onShard(shardFor(userId), work);
+    }
+
+    // pools are created with the router, so they are closed with it
+    public void close() {
+        shards.values().forEach(ds -> {
+            if (ds instanceof HikariDataSource pool) pool.close();
+        });
+        if (lockPool instanceof HikariDataSource pool) pool.close();
+    }
+
+    // runs the query on every shard in parallel, results in shard order
+    public <T> List<T> fanOut(IntFunction<T> perShard) {
+        List<Integer> ids = shardIds();
+        if (ids.size() == 1) return List.of(onShard(ids.get(0), () -> perShard.apply(ids.get(0))));
+        ExecutorService pool = Executors.newFixedThreadPool(ids.size());
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (Integer shard : ids) {
+                futures.add(pool.submit(() -> onShard(shard, () -> perShard.apply(shard))));
+            }
+            List<T> results = new ArrayList<>();
+            for (Future<T> f : futures) results.add(f.get());
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during shard fan-out", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Shard fan-out failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
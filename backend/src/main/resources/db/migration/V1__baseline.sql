@@ -0,0 +1,70 @@
+-- Baseline matching the schema Hibernate generated from the entities under ddl-auto=update,
+-- so it also applies cleanly to databases that were created that way.
+
+CREATE TABLE IF NOT EXISTS users (
+    user_id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    full_name VARCHAR(255),
+    email VARCHAR(255),
+    password VARCHAR(255),
+    date_of_birth DATE,
+    height INTEGER,
+    weight INTEGER,
+    profile_picture_url VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS workout (
+    workout_id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id BIGINT,
+    date DATE,
+    distance FLOAT(53),
+    avg_heart_rate INTEGER,
+    calories INTEGER,
+    location VARCHAR(255),
+    weather_temp INTEGER,
+    weather_humidity INTEGER
+);
+
+CREATE TABLE IF NOT EXISTS meal (
+    meal_id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id BIGINT,
+    type VARCHAR(255),
+    date DATE,
+    food VARCHAR(255),
+    calories INTEGER,
+    protein INTEGER,
+    carbs INTEGER,
+    fat INTEGER
+);
+
+CREATE TABLE IF NOT EXISTS goal (
+    goal_id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id BIGINT,
+    type VARCHAR(255),
+    title VARCHAR(255),
+    description VARCHAR(255),
+    target_value FLOAT(53),
+    current_value FLOAT(53),
+    target_date DATE,
+    status VARCHAR(255),
+    version BIGINT DEFAULT 0 NOT NULL
+);
+
+-- databases created before optimistic versioning was added
+ALTER TABLE goal ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL;
+
+CREATE TABLE IF NOT EXISTS archived_month (
+    archived_month_id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id BIGINT,
+    kind VARCHAR(255),
+    archive_month VARCHAR(255),
+    row_count INTEGER,
+    total_calories INTEGER,
+    total_distance FLOAT(53),
+    checksum BIGINT,
+    archived_at TIMESTAMP(6)
+);
+
+CREATE INDEX IF NOT EXISTS idx_workout_user_date ON workout (user_id, date);
+CREATE INDEX IF NOT EXISTS idx_meal_user_date ON meal (user_id, date);
+CREATE INDEX IF NOT EXISTS idx_goal_user ON goal (user_id);
+CREATE UNIQUE INDEX IF NOT EXISTS idx_archived_month_user_kind_month ON archived_month (user_id, kind, archive_month);
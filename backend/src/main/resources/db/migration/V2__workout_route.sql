@@ -0,0 +1,2 @@
+ALTER TABLE workout ADD COLUMN IF NOT EXISTS duration_seconds INTEGER;
+ALTER TABLE workout ADD COLUMN IF NOT EXISTS route_fingerprint VARCHAR(4000);
@@ -0,0 +1,6 @@
+-- Directory of users placed on a shard other than their consistent-hash shard (kept on shard 0)
+CREATE TABLE IF NOT EXISTS user_shard (
+    user_id BIGINT PRIMARY KEY,
+    shard_id INTEGER NOT NULL,
+    moving BOOLEAN NOT NULL DEFAULT FALSE
+);
@@ -0,0 +1,6 @@
+-- Per-user change counter behind ETags and the response cache, shared by all instances
+CREATE TABLE IF NOT EXISTS user_data_version (
+    user_id BIGINT PRIMARY KEY,
+    version BIGINT NOT NULL,
+    last_modified BIGINT NOT NULL
+);
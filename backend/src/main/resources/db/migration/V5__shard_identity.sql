@@ -0,0 +1,5 @@
+-- Id range reserved for this shard's identity columns, written once when the shard is first set up
+CREATE TABLE IF NOT EXISTS shard_identity (
+    shard_id INTEGER PRIMARY KEY,
+    range_start BIGINT NOT NULL
+);
@@ -23,6 +23,8 @@ CREATE TABLE IF NOT EXISTS workout (
     location VARCHAR(255),
     weather_temp INTEGER,
     weather_humidity INTEGER,
+    duration_seconds INTEGER,
+    route_fingerprint VARCHAR(4000),
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (user_id) REFERENCES users(user_id)
 );
@@ -53,10 +55,26 @@ CREATE TABLE IF NOT EXISTS goal (
     current_value DECIMAL(10, 2) DEFAULT 0,
     target_date DATE,
     status VARCHAR(20) DEFAULT 'ACTIVE' CHECK (status IN ('ACTIVE', 'COMPLETED', 'PAUSED')),
+    version BIGINT NOT NULL DEFAULT 0,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (user_id) REFERENCES users(user_id)
 );
 
+-- Archived months table (one row per archived user/kind/month, with the month's summary)
+CREATE TABLE IF NOT EXISTS archived_month (
+    archived_month_id SERIAL PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    kind VARCHAR(20) NOT NULL CHECK (kind IN ('MEAL', 'WORKOUT')),
+    archive_month VARCHAR(7) NOT NULL,
+    row_count INTEGER,
+    total_calories INTEGER,
+    total_distance DECIMAL(10, 2),
+    checksum BIGINT,
+    archived_at TIMESTAMP,
+    UNIQUE (user_id, kind, archive_month),
+    FOREIGN KEY (user_id) REFERENCES users(user_id)
+);
+
 -- User preferences table
 CREATE TABLE IF NOT EXISTS user_preferences (
     preference_id SERIAL PRIMARY KEY,
@@ -65,4 +83,23 @@ CREATE TABLE IF NOT EXISTS user_preferences (
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (user_id) REFERENCES users(user_id)
-);
\ No newline at end of file
+);
+-- Shard directory: users placed on a shard other than their consistent-hash shard
+CREATE TABLE IF NOT EXISTS user_shard (
+    user_id BIGINT PRIMARY KEY,
+    shard_id INTEGER NOT NULL,
+    moving BOOLEAN NOT NULL DEFAULT FALSE
+);
+
+-- Per-user change counter behind ETags and the response cache
+CREATE TABLE IF NOT EXISTS user_data_version (
+    user_id BIGINT PRIMARY KEY,
+    version BIGINT NOT NULL,
+    last_modified BIGINT NOT NULL
+);
+
+-- Id range reserved for a shard's identity columns, written once when the shard is first set up
+CREATE TABLE IF NOT EXISTS shard_identity (
+    shard_id INTEGER PRIMARY KEY,
+    range_start BIGINT NOT NULL
+);
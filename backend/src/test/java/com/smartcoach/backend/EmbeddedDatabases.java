@@ -0,0 +1,27 @@
+package com.smartcoach.backend;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+
+// In-memory H2 databases that stand in for separate PostgreSQL servers in tests.
+public final class EmbeddedDatabases {
+    private EmbeddedDatabases() {}
+
+    public static String url(String name) {
+        return "jdbc:h2:mem:" + name + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+    }
+
+    public static DataSource dataSource(String name) {
+        return new DriverManagerDataSource(url(name), "sa", "");
+    }
+
+    // applies db/migration, the same schema the prod profile uses
+    public static JdbcTemplate migrate(String name) {
+        DataSource ds = dataSource(name);
+        Flyway.configure().dataSource(ds).baselineOnMigrate(true).baselineVersion("0").load().migrate();
+        return new JdbcTemplate(ds);
+    }
+}
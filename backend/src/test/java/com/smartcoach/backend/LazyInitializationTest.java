@@ -0,0 +1,41 @@
+package com.smartcoach.backend;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The prod profile turns on lazy initialization; beans that load state or sit on the request path
+// must still be created during startup.
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:lazy-init;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.main.lazy-initialization=true"
+})
+@ActiveProfiles("test")
+class LazyInitializationTest {
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @BeforeAll
+    static void createSchema() {
+        EmbeddedDatabases.migrate("lazy-init");
+    }
+
+    @Test
+    void eagerBeansAreCreatedAtStartup() {
+        for (String bean : new String[]{"shardRouter", "routeIndex", "readAfterWriteInterceptor",
+                "shardRoutingInterceptor", "startupTimingFilter", "goalUpdateBuffer", "archiveService"}) {
+            assertThat(context.getBeanFactory().containsSingleton(bean)).as(bean).isTrue();
+        }
+    }
+
+    @Test
+    void otherBeansWaitForFirstUse() {
+        assertThat(context.getBeanFactory().containsSingleton("tokenService")).isFalse();
+    }
+}
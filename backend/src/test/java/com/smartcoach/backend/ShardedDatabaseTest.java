@@ -0,0 +1,59 @@
+package com.smartcoach.backend;
+
+import com.smartcoach.backend.service.ShardRouter;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+// Shared setup for tests against three embedded shards named <prefix>0..2; shard 0 is also the
+// catalog. The application migrates them at startup, tests inspect them directly to see where rows
+// ended up. Subclasses configure smartcoach.sharding.shards[n] and call connect from @BeforeAll.
+public abstract class ShardedDatabaseTest {
+    private static final List<String> USER_TABLES = List.of("meal", "workout", "goal", "archived_month", "user_data_version");
+    protected static JdbcTemplate[] shards;
+    // user ids are never reused across tests, so no test sees another's cached directory entry
+    private static long nextUserId = 1;
+
+    @Autowired
+    protected MockMvc mvc;
+    @Autowired
+    protected ShardRouter router;
+
+    protected static void connect(String prefix) {
+        shards = new JdbcTemplate[3];
+        for (int i = 0; i < shards.length; i++) shards[i] = new JdbcTemplate(EmbeddedDatabases.dataSource(prefix + i));
+    }
+
+    @BeforeEach
+    void clearShards() {
+        for (JdbcTemplate shard : shards) USER_TABLES.forEach(table -> shard.update("delete from " + table));
+        shards[0].update("delete from user_shard");
+        shards[0].update("delete from users");
+    }
+
+    protected long userHashedTo(int shard) {
+        while (router.hashedShardFor(nextUserId) != shard) nextUserId++;
+        return nextUserId++;
+    }
+
+    // moves lock the user's catalog row, so only registered users can be moved
+    protected void register(long userId) {
+        shards[0].update("insert into users (user_id, email) values (?, ?)", userId, "u" + userId + "@example.com");
+    }
+
+    protected ResultActions logMeal(long userId, String food) throws Exception {
+        return mvc.perform(post("/api/meals/" + userId).contentType(MediaType.APPLICATION_JSON)
+                .content("{\"type\":\"dinner\",\"food\":\"" + food + "\",\"calories\":500}"));
+    }
+
+    protected long count(int shard, String table, long userId) {
+        return shards[shard].queryForObject("select count(*) from " + table + " where user_id = ?", Long.class, userId);
+    }
+}
@@ -0,0 +1,116 @@
+package com.smartcoach.backend.config;
+
+import com.smartcoach.backend.EmbeddedDatabases;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.options;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.cookie;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Two embedded databases as primary and replica. Replication is not simulated: each test seeds the
+// replica with a row the primary doesn't have, so the response shows which database served it.
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:rw-primary;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "smartcoach.datasource.replica.url=jdbc:h2:mem:rw-replica;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "smartcoach.datasource.replica.username=sa",
+        "smartcoach.datasource.read-after-write-window-ms=300"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class ReplicaRoutingTest {
+    private static JdbcTemplate primary;
+    private static JdbcTemplate replica;
+
+    @Autowired
+    private MockMvc mvc;
+
+    @BeforeAll
+    static void createSchemas() {
+        primary = EmbeddedDatabases.migrate("rw-primary");
+        replica = EmbeddedDatabases.migrate("rw-replica");
+    }
+
+    @BeforeEach
+    void clearMeals() {
+        primary.update("delete from meal");
+        replica.update("delete from meal");
+        replica.update("insert into meal (user_id, type, food, date, calories) values (1, 'lunch', 'replica-only', current_date, 1)");
+        replica.update("insert into meal (user_id, type, food, date, calories) values (2, 'lunch', 'replica-only', current_date, 1)");
+    }
+
+    @Test
+    void readOnlyGetIsServedByReplica() throws Exception {
+        mvc.perform(get("/api/meals/1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data[*].food", hasItem("replica-only")));
+    }
+
+    @Test
+    void writeGoesToPrimary() throws Exception {
+        mvc.perform(post("/api/meals/1").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"type\":\"dinner\",\"food\":\"pasta\",\"calories\":500}"))
+                .andExpect(status().isCreated());
+
+        assertThat(primary.queryForObject("select count(*) from meal where food = 'pasta'", Integer.class)).isEqualTo(1);
+        assertThat(replica.queryForObject("select count(*) from meal where food = 'pasta'", Integer.class)).isZero();
+    }
+
+    @Test
+    void readsStayOnPrimaryDuringReadAfterWriteWindow() throws Exception {
+        Cookie[] cookies = mvc.perform(post("/api/meals/1").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"type\":\"dinner\",\"food\":\"pasta\",\"calories\":500}"))
+                .andExpect(status().isCreated())
+                .andExpect(cookie().path("primary-until-1", "/api"))
+                .andReturn().getResponse().getCookies();
+
+        mvc.perform(get("/api/meals/1").cookie(cookies))
+                .andExpect(jsonPath("$.data[*].food", hasItem("pasta")))
+                .andExpect(jsonPath("$.data[*].food", not(hasItem("replica-only"))));
+
+        Thread.sleep(400);
+        mvc.perform(get("/api/meals/1").cookie(cookies))
+                .andExpect(jsonPath("$.data[*].food", hasItem("replica-only")));
+    }
+
+    @Test
+    void readAfterWriteWindowIsCarriedByTheClient() throws Exception {
+        mvc.perform(post("/api/meals/1").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"type\":\"dinner\",\"food\":\"pasta\",\"calories\":500}"))
+                .andExpect(status().isCreated());
+
+        // nothing is remembered on the server: a request without the cookie reads from the replica
+        mvc.perform(get("/api/meals/1"))
+                .andExpect(jsonPath("$.data[*].food", hasItem("replica-only")));
+        // and the cookie only pins the user it was set for
+        mvc.perform(get("/api/meals/2").cookie(new Cookie("primary-until-1", Long.toString(System.currentTimeMillis() + 200))))
+                .andExpect(jsonPath("$.data[*].food", hasItem("replica-only")));
+    }
+
+    @Test
+    void corsPreflightDoesNotPinToPrimary() throws Exception {
+        mvc.perform(options("/api/meals/2")
+                        .header(HttpHeaders.ORIGIN, "http://localhost:3000")
+                        .header(HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD, "POST"))
+                .andExpect(status().isOk());
+
+        mvc.perform(get("/api/meals/2"))
+                .andExpect(jsonPath("$.data[*].food", hasItem("replica-only")));
+    }
+}
@@ -0,0 +1,138 @@
+package com.smartcoach.backend.config;
+
+import com.smartcoach.backend.ShardedDatabaseTest;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Routing of requests to the three embedded shards by hash and by directory.
+@SpringBootTest(properties = {
+        "smartcoach.sharding.enabled=true",
+        "smartcoach.sharding.shards[0].url=jdbc:h2:mem:route-shard0;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "smartcoach.sharding.shards[0].username=sa",
+        "smartcoach.sharding.shards[1].url=jdbc:h2:mem:route-shard1;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "smartcoach.sharding.shards[1].username=sa",
+        "smartcoach.sharding.shards[2].url=jdbc:h2:mem:route-shard2;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "smartcoach.sharding.shards[2].username=sa",
+        "smartcoach.sharding.directory-ttl-ms=60000",
+        "smartcoach.archive.dir=target/test-archive/route"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class ShardRoutingTest extends ShardedDatabaseTest {
+
+    @BeforeAll
+    static void connectShards() {
+        connect("route-shard");
+    }
+
+    @Test
+    void writesGoToHashedShard() throws Exception {
+        long userId = userHashedTo(1);
+        logMeal(userId, "pasta").andExpect(status().isCreated());
+
+        assertThat(count(1, "meal", userId)).isEqualTo(1);
+        assertThat(count(0, "meal", userId) + count(2, "meal", userId)).isZero();
+        mvc.perform(get("/api/meals/" + userId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data[*].food", hasItem("pasta")));
+    }
+
+    @Test
+    void directoryOverridesHash() throws Exception {
+        long userId = userHashedTo(1);
+        shards[0].update("insert into user_shard (user_id, shard_id, moving) values (?, 2, false)", userId);
+
+        logMeal(userId, "pasta").andExpect(status().isCreated());
+
+        assertThat(count(2, "meal", userId)).isEqualTo(1);
+        assertThat(count(1, "meal", userId)).isZero();
+    }
+
+    @Test
+    void writesAreRefusedAsSoonAsDirectoryMarksUserMoving() throws Exception {
+        long userId = userHashedTo(2);
+        logMeal(userId, "pasta").andExpect(status().isCreated());
+
+        // set by another instance: this one still has the entry cached as not moving
+        shards[0].update("insert into user_shard (user_id, shard_id, moving) values (?, 2, true)", userId);
+
+        logMeal(userId, "pasta").andExpect(status().isServiceUnavailable());
+        mvc.perform(get("/api/meals/" + userId)).andExpect(status().isOk());
+        assertThat(count(2, "meal", userId)).isEqualTo(1);
+    }
+
+    @Test
+    void idRangesAreRecordedOnEachShard() throws Exception {
+        assertThat(shards[0].queryForObject("select count(*) from shard_identity", Long.class)).isZero();
+        for (int shard = 1; shard < shards.length; shard++) {
+            assertThat(shards[shard].queryForObject("select range_start from shard_identity", Long.class)).isEqualTo(shard * (1L << 40));
+        }
+        long userId = userHashedTo(2);
+        logMeal(userId, "pasta").andExpect(status().isCreated());
+        assertThat(shards[2].queryForObject("select meal_id from meal where user_id = ?", Long.class, userId)).isGreaterThanOrEqualTo(2L << 40);
+    }
+
+    @Test
+    void statsSumAllShards() throws Exception {
+        for (int shard = 0; shard < shards.length; shard++) {
+            long userId = userHashedTo(shard);
+            shards[shard].update("insert into meal (user_id, type, food, date, calories) values (?, 'lunch', 'rice', current_date, ?)",
+                    userId, 100 * (shard + 1));
+            shards[shard].update("insert into workout (user_id, date, distance, calories) values (?, current_date, 5, 300)", userId);
+        }
+
+        mvc.perform(get("/api/admin/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.totals.meals").value(3))
+                .andExpect(jsonPath("$.data.totals.workouts").value(3))
+                .andExpect(jsonPath("$.data.totals.activeUsers").value(3))
+                .andExpect(jsonPath("$.data.totals.caloriesConsumed").value(600))
+                .andExpect(jsonPath("$.data.totals.caloriesBurned").value(900))
+                .andExpect(jsonPath("$.data.shards[2].caloriesConsumed").value(300));
+    }
+
+    @Test
+    void archiveRunWorksOnEveryShard() throws Exception {
+        long[] users = {userHashedTo(1), userHashedTo(2)};
+        for (int i = 0; i < users.length; i++) {
+            shards[i + 1].update("insert into meal (user_id, type, food, date, calories) values (?, 'lunch', 'rice', '2015-03-10', 100)", users[i]);
+        }
+
+        mvc.perform(post("/api/admin/archive/run")).andExpect(status().isOk());
+
+        for (int i = 0; i < users.length; i++) {
+            assertThat(count(i + 1, "meal", users[i])).isZero();
+            assertThat(shards[i + 1].queryForObject("select count(*) from archived_month where user_id = ?", Long.class, users[i]))
+                    .isEqualTo(1);
+        }
+        assertThat(shards[0].queryForObject("select count(*) from archived_month", Long.class)).isZero();
+    }
+
+    @Test
+    void archivedMealsAreDeletedOnlyAfterRestore() throws Exception {
+        long userId = userHashedTo(1);
+        shards[1].update("insert into meal (user_id, type, food, date, calories) values (?, 'lunch', 'rice', '2015-03-10', 100)", userId);
+        long mealId = shards[1].queryForObject("select meal_id from meal where user_id = ?", Long.class, userId);
+        mvc.perform(post("/api/admin/archive/run")).andExpect(status().isOk());
+
+        mvc.perform(delete("/api/meals/" + userId + "/" + mealId))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.error").value("Meal is archived; restore 2015-03 before deleting it"));
+        mvc.perform(delete("/api/meals/" + userId + "/" + (mealId + 1))).andExpect(status().isNotFound());
+
+        mvc.perform(post("/api/admin/archive/" + userId + "/meal/2015-03/restore")).andExpect(status().isOk());
+        mvc.perform(delete("/api/meals/" + userId + "/" + mealId)).andExpect(status().isOk());
+        assertThat(count(1, "meal", userId)).isZero();
+    }
+}
@@ -0,0 +1,87 @@
+package com.smartcoach.backend.service;
+
+import com.smartcoach.backend.EmbeddedDatabases;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// The scheduled flush only runs at startup here; tests call flush() themselves.
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:goal-buffer;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "smartcoach.goal-updates.flush-interval-ms=3600000"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class GoalUpdateBufferTest {
+    private static JdbcTemplate db;
+
+    @Autowired
+    private MockMvc mvc;
+    @Autowired
+    private GoalUpdateBuffer goalUpdateBuffer;
+
+    @BeforeAll
+    static void createSchema() {
+        db = EmbeddedDatabases.migrate("goal-buffer");
+    }
+
+    @Test
+    void bufferedUpdatesAreWrittenOnceAndStillChangeTheETag() throws Exception {
+        long userId = 1;
+        db.update("insert into goal (user_id, type, title, target_value, current_value, target_date, status, version)"
+                + " values (?, 'DISTANCE', '10k', 10, 0, '2030-01-01', 'ACTIVE', 0)", userId);
+        long goalId = db.queryForObject("select goal_id from goal where user_id = ?", Long.class, userId);
+        long dataVersion = dataVersion(userId);
+
+        Set<String> etags = new HashSet<>();
+        etags.add(goalsETag(userId));
+        for (int i = 1; i <= 5; i++) {
+            mvc.perform(put("/api/goals/" + userId + "/" + goalId).contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"currentValue\":" + i + "}"))
+                    .andExpect(status().isOk());
+            etags.add(goalsETag(userId));
+        }
+
+        // every update changed what readers see, but nothing was written yet
+        assertThat(etags).hasSize(6);
+        assertThat(db.queryForObject("select version from goal where goal_id = ?", Long.class, goalId)).isZero();
+        assertThat(dataVersion(userId)).isEqualTo(dataVersion);
+
+        goalUpdateBuffer.flush();
+
+        assertThat(db.queryForObject("select version from goal where goal_id = ?", Long.class, goalId)).isEqualTo(1);
+        assertThat(db.queryForObject("select current_value from goal where goal_id = ?", Double.class, goalId)).isEqualTo(5);
+        assertThat(dataVersion(userId)).isEqualTo(dataVersion + 1);
+        // the flushed state gets a tag of its own, and no later request reuses an earlier one
+        String flushed = goalsETag(userId);
+        assertThat(etags).doesNotContain(flushed);
+        assertThat(goalsETag(userId)).isEqualTo(flushed);
+        mvc.perform(get("/api/goals/" + userId)).andExpect(jsonPath("$.data[0].currentValue").value(5.0));
+    }
+
+    private String goalsETag(long userId) throws Exception {
+        return mvc.perform(get("/api/goals/" + userId)).andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
+    private long dataVersion(long userId) {
+        return db.queryForList("select version from user_data_version where user_id = ?", Long.class, userId)
+                .stream().findFirst().orElse(0L);
+    }
+}
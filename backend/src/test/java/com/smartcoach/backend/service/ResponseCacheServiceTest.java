@@ -0,0 +1,50 @@
+package com.smartcoach.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseCacheServiceTest {
+    private static final DataVersionService.DataVersion VERSION = new DataVersionService.DataVersion(1, 0, 0);
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void payloadsAboveTheEntryLimitAreNotCached() {
+        ResponseCacheService cache = new ResponseCacheService(new ObjectMapper(), 100, 10_000, 100);
+
+        get(cache, 1L, "x".repeat(200));
+        get(cache, 1L, "x".repeat(200));
+        get(cache, 2L, "small");
+        get(cache, 2L, "small");
+
+        assertThat(loads).hasValue(3);
+    }
+
+    @Test
+    void leastRecentlyUsedPayloadsAreEvictedOnceTheByteBudgetIsFull() {
+        // each payload is {"data":"<100 chars>"}, 111 bytes, so three fit in the budget
+        ResponseCacheService cache = new ResponseCacheService(new ObjectMapper(), 100, 350, 1_000);
+        for (long user = 1; user <= 3; user++) get(cache, user, "x".repeat(100));
+        get(cache, 1L, "x".repeat(100));
+        assertThat(loads).hasValue(3);
+
+        get(cache, 4L, "x".repeat(100));
+        get(cache, 1L, "x".repeat(100));
+        get(cache, 2L, "x".repeat(100));
+
+        // user 2 was the least recently used when user 4 was added
+        assertThat(loads).hasValue(5);
+    }
+
+    private void get(ResponseCacheService cache, Long userId, String data) {
+        cache.get(userId, "goals", "", VERSION, () -> {
+            loads.incrementAndGet();
+            return Map.of("data", data);
+        });
+    }
+}
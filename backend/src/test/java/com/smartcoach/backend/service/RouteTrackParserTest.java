@@ -0,0 +1,25 @@
+package com.smartcoach.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RouteTrackParserTest {
+
+    @Test
+    void pointsWithUnparseableCoordinatesAreSkipped() {
+        String gpx = "<gpx><trk><trkseg>"
+                + "<trkpt lat=\"52.5200\" lon=\"13.4050\"><time>2024-05-01T07:00:00Z</time></trkpt>"
+                + "<trkpt lat=\"52.52.10\" lon=\"13.4060\"><time>2024-05-01T07:01:00Z</time></trkpt>"
+                + "<trkpt lat=\"52.5300\" lon=\"13.4150\"><time>2024-05-01T07:06:00Z</time></trkpt>"
+                + "</trkseg></trk></gpx>";
+
+        RouteTrackParser.Track track = RouteTrackParser.parse(gpx.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(track).isNotNull();
+        assertThat(track.points()).hasSize(2);
+        assertThat(track.durationSeconds()).isEqualTo(360);
+    }
+}
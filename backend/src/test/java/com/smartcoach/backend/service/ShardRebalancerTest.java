@@ -0,0 +1,192 @@
+package com.smartcoach.backend.service;
+
+import com.smartcoach.backend.ShardedDatabaseTest;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Moves between three embedded shards. The rebalancer is a spy so a test can act during the
+// cut-over, between reconciling the copy and verifying it.
+@SpringBootTest(properties = {
+        "smartcoach.sharding.enabled=true",
+        "smartcoach.sharding.shards[0].url=jdbc:h2:mem:move-shard0;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "smartcoach.sharding.shards[0].username=sa",
+        "smartcoach.sharding.shards[1].url=jdbc:h2:mem:move-shard1;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "smartcoach.sharding.shards[1].username=sa",
+        "smartcoach.sharding.shards[2].url=jdbc:h2:mem:move-shard2;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "smartcoach.sharding.shards[2].username=sa",
+        "smartcoach.sharding.directory-ttl-ms=50",
+        "smartcoach.sharding.cutover-drain-timeout-ms=500",
+        "smartcoach.archive.dir=target/test-archive/move"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class ShardRebalancerTest extends ShardedDatabaseTest {
+    @SpyBean
+    private ShardRebalancer rebalancer;
+
+    @BeforeAll
+    static void connectShards() {
+        connect("move-shard");
+    }
+
+    @Test
+    void moveCopiesRowsAndSwitchesDirectory() throws Exception {
+        long userId = userHashedTo(1);
+        register(userId);
+        logMeal(userId, "pasta").andExpect(status().isCreated());
+        logMeal(userId, "salad").andExpect(status().isCreated());
+        mvc.perform(post("/api/goals/" + userId).contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"type\":\"DISTANCE\",\"title\":\"10k\",\"targetValue\":10,\"targetDate\":\"2030-01-01\"}"))
+                .andExpect(status().isCreated());
+
+        mvc.perform(post("/api/admin/shards/users/" + userId + "/move").param("target", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.from").value(1))
+                .andExpect(jsonPath("$.data.to").value(2));
+
+        assertThat(count(2, "meal", userId)).isEqualTo(2);
+        assertThat(count(2, "goal", userId)).isEqualTo(1);
+        assertThat(count(1, "meal", userId) + count(1, "goal", userId)).isZero();
+        assertThat(shards[0].queryForObject("select shard_id from user_shard where user_id = ?", Integer.class, userId)).isEqualTo(2);
+        mvc.perform(get("/api/meals/" + userId)).andExpect(jsonPath("$.data", hasSize(2)));
+        logMeal(userId, "soup").andExpect(status().isCreated());
+        assertThat(count(2, "meal", userId)).isEqualTo(3);
+    }
+
+    @Test
+    void writesGet503DuringCutOver() throws Exception {
+        long userId = userHashedTo(1);
+        register(userId);
+        logMeal(userId, "pasta").andExpect(status().isCreated());
+        doAnswer(inv -> {
+            logMeal(userId, "late").andExpect(status().isServiceUnavailable());
+            mvc.perform(get("/api/meals/" + userId)).andExpect(status().isOk());
+            return inv.callRealMethod();
+        }).when(rebalancer).verify(any(), any(), anyInt(), anyInt(), any());
+
+        rebalancer.moveUser(userId, 2);
+
+        assertThat(count(2, "meal", userId)).isEqualTo(1);
+        logMeal(userId, "soup").andExpect(status().isCreated());
+    }
+
+    @Test
+    void failedVerificationRollsBack() throws Exception {
+        long userId = userHashedTo(1);
+        register(userId);
+        logMeal(userId, "pasta").andExpect(status().isCreated());
+        doAnswer(inv -> {
+            // a row only the target has, as if a write slipped past the cut-over
+            shards[2].update("insert into meal (user_id, type, food, date, calories) values (?, 'lunch', 'stray', current_date, 1)", userId);
+            return inv.callRealMethod();
+        }).when(rebalancer).verify(any(), any(), anyInt(), anyInt(), any());
+
+        mvc.perform(post("/api/admin/shards/users/" + userId + "/move").param("target", "2"))
+                .andExpect(status().isConflict());
+
+        assertThat(router.shardFor(userId)).isEqualTo(1);
+        assertThat(router.isMoving(userId)).isFalse();
+        assertThat(count(1, "meal", userId)).isEqualTo(1);
+        assertThat(count(2, "meal", userId)).isZero();
+        logMeal(userId, "soup").andExpect(status().isCreated());
+        assertThat(count(1, "meal", userId)).isEqualTo(2);
+    }
+
+    @Test
+    void cutOverWaitsForWritesInFlight() throws Exception {
+        long userId = userHashedTo(1);
+        register(userId);
+        logMeal(userId, "pasta").andExpect(status().isCreated());
+        // a write admitted on another instance: it holds the lease, not anything in this JVM's memory
+        ShardRouter.WriteLease lease = router.beginWrite(List.of(userId));
+        assertThat(lease.admits(userId)).isTrue();
+        Thread writer = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            lease.close();
+        });
+        writer.start();
+
+        ShardRebalancer.MoveReport report = rebalancer.moveUser(userId, 2);
+        writer.join();
+
+        assertThat(report.cutOverMillis()).isGreaterThanOrEqualTo(150);
+        assertThat(router.shardFor(userId)).isEqualTo(2);
+    }
+
+    @Test
+    void moveGivesUpWhenWritesDoNotFinish() throws Exception {
+        long userId = userHashedTo(1);
+        register(userId);
+        logMeal(userId, "pasta").andExpect(status().isCreated());
+        try (ShardRouter.WriteLease lease = router.beginWrite(List.of(userId))) {
+            assertThat(lease.admits(userId)).isTrue();
+            mvc.perform(post("/api/admin/shards/users/" + userId + "/move").param("target", "2"))
+                    .andExpect(status().isConflict());
+        }
+
+        assertThat(router.shardFor(userId)).isEqualTo(1);
+        assertThat(router.isMoving(userId)).isFalse();
+        assertThat(count(2, "meal", userId)).isZero();
+        logMeal(userId, "soup").andExpect(status().isCreated());
+    }
+
+    @Test
+    void unknownUsersAreNotMoved() throws Exception {
+        long userId = userHashedTo(1);
+        logMeal(userId, "pasta").andExpect(status().isCreated());
+
+        mvc.perform(post("/api/admin/shards/users/" + userId + "/move").param("target", "2"))
+                .andExpect(status().isBadRequest());
+
+        assertThat(count(1, "meal", userId)).isEqualTo(1);
+        assertThat(count(2, "meal", userId)).isZero();
+    }
+
+    @Test
+    void rebalanceMovesPinnedUsersBackToTheirRingShard() throws Exception {
+        long onRing = userHashedTo(1);
+        long moved = userHashedTo(2);
+        for (long userId : List.of(onRing, moved)) {
+            register(userId);
+            logMeal(userId, "pasta").andExpect(status().isCreated());
+        }
+        rebalancer.moveUser(moved, 0);
+
+        mvc.perform(post("/api/admin/shards/pin"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.pinned").value(1));
+        assertThat(shards[0].queryForObject("select count(*) from user_shard", Long.class)).isEqualTo(2);
+
+        mvc.perform(post("/api/admin/shards/rebalance"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.moved").value(1))
+                .andExpect(jsonPath("$.data.unpinned").value(2))
+                .andExpect(jsonPath("$.data.remaining").value(0));
+
+        assertThat(router.shardFor(moved)).isEqualTo(2);
+        assertThat(count(2, "meal", moved)).isEqualTo(1);
+        assertThat(count(0, "meal", moved)).isZero();
+        assertThat(router.shardFor(onRing)).isEqualTo(1);
+    }
+}